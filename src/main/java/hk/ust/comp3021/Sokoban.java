@@ -65,8 +65,9 @@ public class Sokoban {
                                   @NotNull String[] actionFiles
     ) throws IOException, InterruptedException {
         final var threads = new Thread[repeat];
+        final var actionMappings = SokobanGameFactory.mapActionFiles(actionFiles);
         for (int i = 0; i < repeat; i++) {
-            final var game = SokobanGameFactory.createReplayGame(mapFile, mode, fps, actionFiles);
+            final var game = SokobanGameFactory.createReplayGame(mapFile, mode, fps, actionMappings);
             final var thread = new Thread(game);
             threads[i] = thread;
         }
@@ -1,19 +1,27 @@
 package hk.ust.comp3021;
 
+import hk.ust.comp3021.game.BinaryGameMap;
 import hk.ust.comp3021.game.GameMap;
 import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.LevelPack;
 import hk.ust.comp3021.game.SokobanGame;
+import hk.ust.comp3021.replay.MappedInputEngine;
+import hk.ust.comp3021.replay.PackedInputEngine;
 import hk.ust.comp3021.replay.ReplaySokobanGame;
-import hk.ust.comp3021.replay.StreamInputEngine;
 import hk.ust.comp3021.replay.TerminalRenderingEngine;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +29,47 @@ import java.util.stream.Collectors;
  */
 public class SokobanGameFactory {
 
+    /**
+     * The maximum number of game maps kept by {@link #loadCachedGameMap(Path)}.
+     */
+    static final int MAP_CACHE_CAPACITY = 64;
+
+    /**
+     * The maximum number of level packs kept by {@link #openLevelPack(Path)}.
+     */
+    static final int LEVEL_PACK_CACHE_CAPACITY = 16;
+
+    /**
+     * Game maps loaded by {@link #loadCachedGameMap(Path)}, keyed by their absolute paths.
+     */
+    private static final Map<Path, CachedFile<GameMap>> mapCache = lruCache(MAP_CACHE_CAPACITY);
+
+    /**
+     * Level packs opened by {@link #openLevelPack(Path)}, keyed by their absolute paths.
+     */
+    private static final Map<Path, CachedFile<LevelPack>> levelPackCache = lruCache(LEVEL_PACK_CACHE_CAPACITY);
+
+    /**
+     * An object loaded from a file, together with the attributes of the file it was loaded from.
+     *
+     * @param lastModified The modification time of the file.
+     * @param size         The size of the file.
+     * @param value        The loaded object.
+     * @param <T>          The type of the loaded object.
+     */
+    private record CachedFile<T>(@NotNull FileTime lastModified, long size, @NotNull T value) {
+    }
+
+    /**
+     * Loads an object from a file.
+     *
+     * @param <T> The type of the loaded object.
+     */
+    @FunctionalInterface
+    private interface FileLoader<T> {
+        @NotNull T load(@NotNull Path file) throws IOException;
+    }
+
     /**
      * Create a Sokoban game.
      *
@@ -35,15 +84,34 @@ public class SokobanGameFactory {
                                                         @NotNull ReplaySokobanGame.Mode mode,
                                                         int frameRate,
                                                         @NotNull String[] actionFiles
+    ) throws IOException {
+        return createReplayGame(mapFile, mode, frameRate, mapActionFiles(actionFiles));
+    }
+
+    /**
+     * Create a Sokoban game replaying action files that have already been mapped
+     * (see {@link #mapActionFiles(String[])}).
+     * The game only reads from its own views of the mappings, so the same mappings can be passed to any number of
+     * games, such as all repeats of a replay.
+     *
+     * @param mapFile        Map file.
+     * @param mode           Mode of the game.
+     * @param frameRate      Rendering frameRate.
+     * @param actionMappings The mappings of the action files, one per player.
+     * @return The Sokoban game.
+     * @throws IOException if mapFile cannot be load
+     */
+    public static @NotNull SokobanGame createReplayGame(@NotNull String mapFile,
+                                                        @NotNull ReplaySokobanGame.Mode mode,
+                                                        int frameRate,
+                                                        @NotNull List<ByteBuffer> actionMappings
     ) throws IOException {
         Path file = Path.of(mapFile);
-        final var gameMap = loadGameMap(file);
-        final var inputEngines = Arrays.stream(actionFiles).map(f -> {
-            try {
-                return new StreamInputEngine(new FileInputStream(f));
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException(e);
-            }
+        final var gameMap = loadCachedGameMap(file);
+        final var inputEngines = actionMappings.stream().map(actions -> {
+            if (PackedInputEngine.isPacked(actions))
+                return new PackedInputEngine(actions);
+            return new MappedInputEngine(actions);
         }).collect(Collectors.toList());
         return new ReplaySokobanGame(
                 mode,
@@ -55,13 +123,123 @@ public class SokobanGameFactory {
     }
 
     /**
+     * Load a game map from either a text map file or a compiled map file (see {@link BinaryGameMap}).
+     * The format is detected from the content of the file.
+     *
      * @param mapFile The file containing the game map.
      * @return The parsed game map.
      * @throws IOException When there is an issue loading the file.
      */
     public static @NotNull GameMap loadGameMap(@NotNull Path mapFile) throws IOException {
-        final var fileContent = Files.readString(mapFile);
-        return GameMap.parse(fileContent);
+        if (BinaryGameMap.isBinary(mapFile))
+            return BinaryGameMap.load(mapFile);
+        try (final var stream = Files.newInputStream(mapFile)) {
+            return GameMap.parse(stream);
+        }
+    }
+
+    /**
+     * Load a game map, reusing the map parsed by a previous call if the file has not changed since then.
+     * A file is considered unchanged if its modification time and size are the same.
+     * <p>
+     * Parsed game maps are never modified, so the returned map can be shared by any number of {@link GameState}s.
+     * Only the {@link #MAP_CACHE_CAPACITY} most recently used maps are kept.
+     *
+     * @param mapFile The file containing the game map.
+     * @return The parsed game map.
+     * @throws IOException When there is an issue loading the file.
+     */
+    public static @NotNull GameMap loadCachedGameMap(@NotNull Path mapFile) throws IOException {
+        return loadCached(mapCache, mapFile, SokobanGameFactory::loadGameMap);
+    }
+
+    /**
+     * Open a level pack, reusing the pack opened by a previous call if the file has not changed since then.
+     * A file is considered unchanged if its modification time and size are the same.
+     * Only the {@link #LEVEL_PACK_CACHE_CAPACITY} most recently used packs are kept, and the mappings of evicted
+     * packs are released once they are no longer used.
+     *
+     * @param packFile The level pack file.
+     * @return The level pack.
+     * @throws IOException When there is an issue loading the file.
+     */
+    public static @NotNull LevelPack openLevelPack(@NotNull Path packFile) throws IOException {
+        return loadCached(levelPackCache, packFile, LevelPack::open);
+    }
+
+    /**
+     * Load a game map from a level pack (see {@link LevelPack}).
+     * The level pack is memory-mapped once, and the level is only parsed if it is not in the cache of the pack.
+     *
+     * @param packFile The level pack file.
+     * @param level    The index of the level in the pack, starting from 0.
+     * @return The game map of the level.
+     * @throws IOException When there is an issue loading the file.
+     */
+    public static @NotNull GameMap loadGameMap(@NotNull Path packFile, int level) throws IOException {
+        return openLevelPack(packFile).getLevel(level);
+    }
+
+    /**
+     * Map action files into memory, once each.
+     * Callers creating several games from the same action files, such as all repeats of a replay, should map them once
+     * and pass the mappings to {@link #createReplayGame(String, ReplaySokobanGame.Mode, int, List)}.
+     *
+     * @param actionFiles The action files.
+     * @return The read-only mappings of the action files, in the same order.
+     * @throws IOException When there is an issue loading a file.
+     */
+    public static @NotNull List<ByteBuffer> mapActionFiles(@NotNull String[] actionFiles) throws IOException {
+        final var mappings = new ArrayList<ByteBuffer>(actionFiles.length);
+        for (final var actionFile : actionFiles) {
+            mappings.add(mapActionFile(Path.of(actionFile)));
+        }
+        return mappings;
+    }
+
+    /**
+     * Map an action file into memory.
+     * <p>
+     * The mapping is never modified, so it can be shared by any number of {@link MappedInputEngine}s without reading
+     * the file again.
+     * Mappings are not cached, so the file is released, and can be rewritten or deleted, once no engine uses the
+     * mapping.
+     *
+     * @param actionFile The action file.
+     * @return The read-only mapping of the action file.
+     * @throws IOException When there is an issue loading the file.
+     */
+    public static @NotNull ByteBuffer mapActionFile(@NotNull Path actionFile) throws IOException {
+        return MappedInputEngine.map(actionFile);
+    }
+
+    /**
+     * @param capacity The maximum number of entries.
+     * @param <T>      The type of the loaded objects.
+     * @return A thread-safe cache evicting its least recently used entry once it holds more than the capacity.
+     */
+    private static <T> @NotNull Map<Path, CachedFile<T>> lruCache(int capacity) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedFile<T>> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    private static <T> @NotNull T loadCached(@NotNull Map<Path, CachedFile<T>> cache,
+                                             @NotNull Path file,
+                                             @NotNull FileLoader<T> loader) throws IOException {
+        final var key = file.toAbsolutePath().normalize();
+        final var attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        final var cached = cache.get(key);
+        if (cached != null
+                && cached.lastModified().equals(attributes.lastModifiedTime())
+                && cached.size() == attributes.size())
+            return cached.value();
+        final var value = loader.load(key);
+        cache.put(key, new CachedFile<>(attributes.lastModifiedTime(), attributes.size(), value));
+        return value;
     }
 
 }
@@ -7,6 +7,12 @@ public abstract sealed class Action permits InvalidInput, Move, Undo, Exit {
 
     protected final int initiator;
 
+    /**
+     * The successful result of this action, returned by {@link ActionResult.Success#of(Action)}.
+     * It is created with the action, so the action stays immutable and can be shared across threads.
+     */
+    final ActionResult.Success success = new ActionResult.Success(this);
+
     /**
      * @return The id of the player who performed the action.
      */
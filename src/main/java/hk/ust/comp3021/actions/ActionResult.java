@@ -34,6 +34,17 @@ public abstract sealed class ActionResult {
         public Success(@NotNull Action action) {
             super(action);
         }
+
+        /**
+         * Get the successful result of an action.
+         * Results are immutable, so the result is created once with each action and shared afterwards.
+         *
+         * @param action The action.
+         * @return The successful result.
+         */
+        public static @NotNull Success of(@NotNull Action action) {
+            return action.success;
+        }
     }
 
     /**
@@ -6,20 +6,112 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * An actions of moving a player.
+ * <p>
+ * A move may consist of several steps in the same direction (see {@link #getSteps()}), which are applied one by one.
+ * <p>
+ * Besides {@link #nextPosition(Position)}, a move can be applied to packed coordinates,
+ * i.e., cell indexes {@code y * width + x}, with {@link #nextIndex(int, int)}.
  */
 public abstract sealed class Move extends Action permits Move.Down, Move.Left, Move.Right, Move.Up {
 
-    protected Move(int initiator) {
+    /**
+     * The direction of {@link Down}.
+     */
+    public static final int DOWN = 0;
+
+    /**
+     * The direction of {@link Left}.
+     */
+    public static final int LEFT = 1;
+
+    /**
+     * The direction of {@link Right}.
+     */
+    public static final int RIGHT = 2;
+
+    /**
+     * The direction of {@link Up}.
+     */
+    public static final int UP = 3;
+
+    private static final int[] DX = {0, -1, 1, 0};
+
+    private static final int[] DY = {1, 0, 0, -1};
+
+    private final int direction;
+
+    private final int steps;
+
+    protected Move(int initiator, int direction) {
+        this(initiator, direction, 1);
+    }
+
+    protected Move(int initiator, int direction, int steps) {
         super(initiator);
+        if (steps < 1)
+            throw new IllegalArgumentException("invalid number of steps: " + steps);
+        this.direction = direction;
+        this.steps = steps;
+    }
+
+    /**
+     * @param direction The direction, one of {@link #DOWN}, {@link #LEFT}, {@link #RIGHT} and {@link #UP}.
+     * @return The horizontal displacement of a move in the direction.
+     */
+    public static int dx(int direction) {
+        return DX[direction];
+    }
+
+    /**
+     * @param direction The direction, one of {@link #DOWN}, {@link #LEFT}, {@link #RIGHT} and {@link #UP}.
+     * @return The vertical displacement of a move in the direction.
+     */
+    public static int dy(int direction) {
+        return DY[direction];
+    }
+
+    /**
+     * @return The direction of the move, one of {@link #DOWN}, {@link #LEFT}, {@link #RIGHT} and {@link #UP}.
+     */
+    public int getDirection() {
+        return direction;
     }
 
     /**
-     * Generates the next position after the move based on the current position.
+     * @return The number of steps of the move, which is at least 1.
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Generates the next position after one step of the move based on the current position.
      *
      * @param currentPosition The current position.
      * @return The next position.
      */
-    public abstract @NotNull Position nextPosition(@NotNull Position currentPosition);
+    public @NotNull Position nextPosition(@NotNull Position currentPosition) {
+        return Position.of(currentPosition.x() + DX[direction], currentPosition.y() + DY[direction]);
+    }
+
+    /**
+     * Generates the index of the next cell after one step of the move based on the index of the current cell.
+     * The caller is responsible for not moving across the left or right edge of the board.
+     *
+     * @param cell  The index {@code y * width + x} of the current cell.
+     * @param width The width of the board.
+     * @return The index of the next cell.
+     */
+    public int nextIndex(int cell, int width) {
+        return cell + DX[direction] + DY[direction] * width;
+    }
+
+    /**
+     * @return The suffix of {@link #toString()} denoting the number of steps, which is empty for single-step moves.
+     */
+    protected @NotNull String stepsToString() {
+        return steps == 1 ? "" : " " + steps + " times";
+    }
 
     /**
      * The action of moving down.
@@ -30,19 +122,20 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
          * @param initiator The id of the player who give the invalid input.
          */
         public Down(int initiator) {
-            super(initiator);
+            super(initiator, DOWN);
         }
 
-
-        @Override
-        public @NotNull Position nextPosition(@NotNull Position currentPosition) {
-            return Position.of(currentPosition.x(), currentPosition.y() + 1);
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @param steps     The number of steps to move.
+         */
+        public Down(int initiator, int steps) {
+            super(initiator, DOWN, steps);
         }
 
-
         @Override
         public String toString() {
-            return String.format("Player %c moves down", Player.idToChar(getInitiator()));
+            return String.format("Player %c moves down", Player.idToChar(getInitiator())) + stepsToString();
         }
     }
 
@@ -54,17 +147,20 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
          * @param initiator The id of the player who give the invalid input.
          */
         public Left(int initiator) {
-            super(initiator);
+            super(initiator, LEFT);
         }
 
-        @Override
-        public @NotNull Position nextPosition(@NotNull Position currentPosition) {
-            return Position.of(currentPosition.x() - 1, currentPosition.y());
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @param steps     The number of steps to move.
+         */
+        public Left(int initiator, int steps) {
+            super(initiator, LEFT, steps);
         }
 
         @Override
         public String toString() {
-            return String.format("Player %c moves left", Player.idToChar(getInitiator()));
+            return String.format("Player %c moves left", Player.idToChar(getInitiator())) + stepsToString();
         }
     }
 
@@ -76,17 +172,20 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
          * @param initiator The id of the player who give the invalid input.
          */
         public Right(int initiator) {
-            super(initiator);
+            super(initiator, RIGHT);
         }
 
-        @Override
-        public @NotNull Position nextPosition(@NotNull Position currentPosition) {
-            return Position.of(currentPosition.x() + 1, currentPosition.y());
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @param steps     The number of steps to move.
+         */
+        public Right(int initiator, int steps) {
+            super(initiator, RIGHT, steps);
         }
 
         @Override
         public String toString() {
-            return String.format("Player %c moves right", Player.idToChar(getInitiator()));
+            return String.format("Player %c moves right", Player.idToChar(getInitiator())) + stepsToString();
         }
     }
 
@@ -98,18 +197,20 @@ public abstract sealed class Move extends Action permits Move.Down, Move.Left, M
          * @param initiator The id of the player who give the invalid input.
          */
         public Up(int initiator) {
-            super(initiator);
+            super(initiator, UP);
         }
 
-        @Override
-        public @NotNull Position nextPosition(@NotNull Position currentPosition) {
-            return Position.of(currentPosition.x(), currentPosition.y() - 1);
+        /**
+         * @param initiator The id of the player who performed the action.
+         * @param steps     The number of steps to move.
+         */
+        public Up(int initiator, int steps) {
+            super(initiator, UP, steps);
         }
 
         @Override
         public String toString() {
-            return String.format("Player %c moves up", Player.idToChar(getInitiator()));
+            return String.format("Player %c moves up", Player.idToChar(getInitiator())) + stepsToString();
         }
     }
 }
-
@@ -1,13 +1,34 @@
 package hk.ust.comp3021.entities;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.util.Objects;
 
 /**
  * Denotes a box.
  */
 public final class Box extends Entity {
+    private static final Box[] INSTANCES = new Box[Player.MAX_CACHED_ID + 1];
+
+    static {
+        for (int id = 0; id < INSTANCES.length; id++) {
+            INSTANCES[id] = new Box(id);
+        }
+    }
+
     private final int playerId;
 
+    /**
+     * Get a Box entity.
+     * Boxes are immutable, so boxes of the same player are shared instead of being created again.
+     *
+     * @param playerId the id of the player that can move this box.
+     * @return the box.
+     */
+    public static @NotNull Box of(int playerId) {
+        return playerId >= 0 && playerId < INSTANCES.length ? INSTANCES[playerId] : new Box(playerId);
+    }
+
     /**
      * Create a Box entity.
      *
@@ -1,5 +1,7 @@
 package hk.ust.comp3021.entities;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.util.Objects;
 
 /**
@@ -7,6 +9,18 @@ import java.util.Objects;
  */
 public final class Empty extends Entity {
 
+    private static final Empty INSTANCE = new Empty();
+
+    /**
+     * Get the shared empty cell instance.
+     * All empty cells are equal, so there is no need to create new ones.
+     *
+     * @return the empty cell.
+     */
+    public static @NotNull Empty of() {
+        return INSTANCE;
+    }
+
     @Override
     public boolean equals(Object o) {
         return o instanceof Empty;
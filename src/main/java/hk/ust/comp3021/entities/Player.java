@@ -1,5 +1,7 @@
 package hk.ust.comp3021.entities;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.util.Objects;
 
 /**
@@ -7,6 +9,19 @@ import java.util.Objects;
  */
 public final class Player extends Entity {
 
+    /**
+     * The largest player id whose {@link Player} and {@link Box} instances are shared.
+     */
+    static final int MAX_CACHED_ID = 25;
+
+    private static final Player[] INSTANCES = new Player[MAX_CACHED_ID + 1];
+
+    static {
+        for (int id = 0; id < INSTANCES.length; id++) {
+            INSTANCES[id] = new Player(id);
+        }
+    }
+
     /**
      * Converts a player id to its char representation.
      *
@@ -28,6 +43,17 @@ public final class Player extends Entity {
         this.id = id;
     }
 
+    /**
+     * Get a player object with an id.
+     * Players are immutable, so players with the same id are shared instead of being created again.
+     *
+     * @param id id of the player.
+     * @return the player.
+     */
+    public static @NotNull Player of(int id) {
+        return id >= 0 && id < INSTANCES.length ? INSTANCES[id] : new Player(id);
+    }
+
     /**
      * Get the player id.
      *
@@ -1,11 +1,26 @@
 package hk.ust.comp3021.entities;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.util.Objects;
 
 /**
  * Denotes a wall.
  */
 public final class Wall extends Entity {
+
+    private static final Wall INSTANCE = new Wall();
+
+    /**
+     * Get the shared wall instance.
+     * All walls are equal, so there is no need to create new ones.
+     *
+     * @return the wall.
+     */
+    public static @NotNull Wall of() {
+        return INSTANCE;
+    }
+
     @Override
     public boolean equals(Object o) {
         return o instanceof Wall;
@@ -8,6 +8,8 @@ import hk.ust.comp3021.entities.Wall;
 import hk.ust.comp3021.utils.ShouldNotReachException;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Objects;
+
 import static hk.ust.comp3021.utils.StringResources.PLAYER_NOT_FOUND;
 import static hk.ust.comp3021.utils.StringResources.UNDO_QUOTA_RUN_OUT;
 
@@ -45,38 +47,61 @@ public abstract class AbstractSokobanGame implements SokobanGame {
                     .orElse(true);
                 if (shouldUndo) {
                     this.state.undo();
-                    yield new ActionResult.Success(action);
+                    yield ActionResult.Success.of(action);
                 } else {
                     yield new ActionResult.Failed(action, UNDO_QUOTA_RUN_OUT);
                 }
             }
             case Exit ignored -> {
                 this.isExitSpecified = true;
-                yield new ActionResult.Success(action);
+                yield ActionResult.Success.of(action);
             }
             case Move move -> {
                 final var currentPlayerPos = this.state.getPlayerPositionById(action.getInitiator());
                 if (currentPlayerPos == null) {
                     yield new ActionResult.Failed(action, PLAYER_NOT_FOUND);
                 }
-                yield this.processOneStepMove(currentPlayerPos, move);
+                var result = this.processOneStepMove(currentPlayerPos, move);
+                // Multi-step moves stop at the first step that fails or wins the game.
+                for (int step = 1;
+                     step < move.getSteps() && result instanceof ActionResult.Success && !this.state.isWin();
+                     step++) {
+                    final var playerPos = this.state.getPlayerPositionById(action.getInitiator());
+                    result = this.processOneStepMove(Objects.requireNonNull(playerPos), move);
+                }
+                yield result;
             }
         };
     }
 
     /**
+     * Called after a box has been pushed onto a dead square, i.e., a cell from which it can never reach any destination
+     * (see {@link GameState#isDeadSquare(Position)}), so that it can only be saved by undoing.
+     * The push itself has succeeded, and does nothing more by default.
+     *
+     * @param move        The move pushing the box.
+     * @param boxPosition The new position of the box.
+     */
+    protected void onDoomedPush(@NotNull Move move, @NotNull Position boxPosition) {
+    }
+
+    /**
+     * Processing a successful move does not allocate:
+     * cells are looked up by index, and entities, positions and successful results are all shared instances.
+     *
      * @param playerPosition The position of the player.
-     * @param move           One-step move. We assume every move has only one step.
-     * @return The action result for the move.
+     * @param move           The move, of which only one step is processed.
+     * @return The action result for the step.
      */
     @NotNull
     private ActionResult processOneStepMove(@NotNull Position playerPosition, @NotNull Move move) {
-        final var nextPlayerPos = move.nextPosition(playerPosition);
-        final var nextEntity = this.state.getEntity(nextPlayerPos);
+        final var nextPlayerCell = this.state.nextIndex(this.state.indexOf(playerPosition), move);
+        final var nextEntity = this.state.getEntity(nextPlayerCell);
         return switch (nextEntity) {
             case Empty ignored -> {
-                this.state.move(playerPosition, nextPlayerPos); // move if next place is empty
-                yield new ActionResult.Success(move);
+                // move if next place is empty
+                this.state.move(playerPosition, this.state.positionOf(nextPlayerCell));
+                yield ActionResult.Success.of(move);
             }
             case Wall ignored -> new ActionResult.Failed(move, "You hit a wall.");
             case Player ignored -> new ActionResult.Failed(move, "You hit another player.");
@@ -84,14 +109,17 @@ public abstract class AbstractSokobanGame implements SokobanGame {
                 if (box.getPlayerId() != move.getInitiator()) {
                     yield new ActionResult.Failed(move, "You cannot move other players' boxes.");
                 }
-                final var nextBoxPos = move.nextPosition(nextPlayerPos);
-                if (!(this.state.getEntity(nextBoxPos) instanceof Empty))
+                final var nextBoxCell = this.state.nextIndex(nextPlayerCell, move);
+                if (!(this.state.getEntity(nextBoxCell) instanceof Empty))
                     yield new ActionResult.Failed(move, "Failed to push the box.");
-                this.state.move(nextPlayerPos, nextBoxPos);
+                final var nextPlayerPos = this.state.positionOf(nextPlayerCell);
+                this.state.move(nextPlayerPos, this.state.positionOf(nextBoxCell));
                 this.state.move(playerPosition, nextPlayerPos);
                 // Game history checkpoint reached if any box is moved.
                 this.state.checkpoint();
-                yield new ActionResult.Success(move);
+                if (this.state.isDeadSquare(nextBoxCell))
+                    onDoomedPush(move, this.state.positionOf(nextBoxCell));
+                yield ActionResult.Success.of(move);
             }
             case null -> throw new ShouldNotReachException();
         };
@@ -0,0 +1,157 @@
+package hk.ust.comp3021.game;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+
+/**
+ * Reads and writes game maps in the compiled binary {@code .smap} format.
+ * <p>
+ * A compiled map holds the cells of a map exactly as a {@link GameState} stores them, so loading one only copies the
+ * cells instead of parsing text. All numbers are big-endian. The layout is:
+ * <li>Magic number {@code "SMAP"} (4 bytes) and format version (2 bytes).</li>
+ * <li>Flags (2 bytes). {@link #VALIDATED} is set if the map passed the checks of {@link GameMap#parse(String)}.</li>
+ * <li>Width, height, undo limit and number of destinations (4 bytes each).</li>
+ * <li>The cell codes, one byte per cell, row by row.</li>
+ * <li>The destinations as a {@link Bitboard}, 8 bytes per word.</li>
+ * <p>
+ * Maps flagged as validated are not validated again when they are loaded.
+ */
+public final class BinaryGameMap {
+
+    /**
+     * The magic number at the start of every compiled map, {@code "SMAP"} in ASCII.
+     */
+    public static final int MAGIC = 0x534D4150;
+
+    private static final short VERSION = 1;
+
+    /**
+     * The flag denoting that the map has passed validation when it was written.
+     */
+    private static final short VALIDATED = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private BinaryGameMap() {
+    }
+
+    /**
+     * Check whether a file starts with the magic number of compiled maps.
+     *
+     * @param file The file to check.
+     * @return Whether the file is a compiled map.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isBinary(@NotNull Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0)
+                    return false;
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Write a game map to a file in the compiled format, replacing the file if it exists.
+     *
+     * @param gameMap The game map.
+     * @param file    The file to write to.
+     * @throws IOException              if the file cannot be written.
+     * @throws IllegalArgumentException if the map is too large or contains entities that cannot be represented.
+     */
+    public static void write(@NotNull GameMap gameMap, @NotNull Path file) throws IOException {
+        final var board = gameMap.board();
+        final var destinations = board.destinationBits();
+        final var buffer = ByteBuffer.allocate(HEADER_SIZE + board.cells.length + destinations.length * Long.BYTES);
+        buffer.putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort(gameMap.isValidated() ? VALIDATED : 0)
+                .putInt(board.width)
+                .putInt(board.height)
+                .putInt(gameMap.getUndoLimit().orElse(-1))
+                .putInt(gameMap.getDestinations().size())
+                .put(board.cells);
+        buffer.asLongBuffer().put(destinations);
+        buffer.clear();
+        try (final var channel = FileChannel.open(file,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Load a game map from a compiled map file, which is memory-mapped rather than read.
+     *
+     * @param file The compiled map file.
+     * @return The loaded game map.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a valid compiled map.
+     */
+    public static @NotNull GameMap load(@NotNull Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a game map in the compiled format from a buffer.
+     *
+     * @param buffer The buffer, holding the compiled map from its position on. The position is not changed.
+     * @return The loaded game map.
+     * @throws IllegalArgumentException if the buffer does not hold a valid compiled map.
+     */
+    public static @NotNull GameMap read(@NotNull ByteBuffer buffer) {
+        final var start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(start) != MAGIC)
+            throw new IllegalArgumentException("not a compiled map");
+        if (buffer.getShort(start + 4) != VERSION)
+            throw new IllegalArgumentException("unsupported compiled map version: " + buffer.getShort(start + 4));
+        final var flags = buffer.getShort(start + 6);
+        final var width = buffer.getInt(start + 8);
+        final var height = buffer.getInt(start + 12);
+        final var undoLimit = buffer.getInt(start + 16);
+        final var destinationCount = buffer.getInt(start + 20);
+
+        final var destinationBits = Bitboard.create(width, height);
+        final var cellCount = width * height;
+        if (buffer.remaining() < HEADER_SIZE + cellCount + (long) destinationBits.length * Long.BYTES)
+            throw new IllegalArgumentException("truncated compiled map");
+        final var bitsOffset = start + HEADER_SIZE + cellCount;
+        for (int i = 0; i < destinationBits.length; i++) {
+            destinationBits[i] = buffer.getLong(bitsOffset + i * Long.BYTES);
+        }
+
+        final var destinations = new HashSet<Position>();
+        for (int i = 0; i < destinationBits.length; i++) {
+            var word = destinationBits[i];
+            while (word != 0) {
+                final var index = i * Long.SIZE + Long.numberOfTrailingZeros(word);
+                if (index >= cellCount)
+                    throw new IllegalArgumentException("destination outside the compiled map");
+                destinations.add(Position.of(index % width, index / width));
+                word &= word - 1;
+            }
+        }
+        if (destinations.size() != destinationCount)
+            throw new IllegalArgumentException("mismatch destinations in the compiled map");
+
+        final var board = new Board(width, height, destinations);
+        buffer.get(start + HEADER_SIZE, board.cells);
+        board.reindex();
+        if ((flags & VALIDATED) == 0)
+            MapParser.validate(board, destinationCount, undoLimit);
+        return new GameMap(board, destinations, undoLimit);
+    }
+}
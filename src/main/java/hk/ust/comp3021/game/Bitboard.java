@@ -0,0 +1,82 @@
+package hk.ust.comp3021.game;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Helpers for bitboards, i.e., sets of cells on a game map stored as bits in a {@code long[]}.
+ * <p>
+ * The cell at position (x, y) on a map of width w is denoted by bit {@code y * w + x}, which is stored in word
+ * {@code index >>> 6} at bit {@code index & 63}.
+ * Set operations on whole maps, such as checking whether all destinations are covered by boxes, therefore take one
+ * instruction per 64 cells.
+ */
+public final class Bitboard {
+
+    private Bitboard() {
+    }
+
+    /**
+     * Create an empty bitboard for a map.
+     *
+     * @param width  Width of the map.
+     * @param height Height of the map.
+     * @return The bitboard with no bit set.
+     * @throws IllegalArgumentException if the map is too large to be represented.
+     */
+    public static long @NotNull [] create(int width, int height) {
+        final long size = (long) width * height;
+        if (width < 0 || height < 0 || size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("map too large");
+        return new long[(int) ((size + 63) >>> 6)];
+    }
+
+    /**
+     * @param bits  The bitboard.
+     * @param index The index of the cell.
+     * @return Whether the bit of the cell is set.
+     */
+    public static boolean get(long @NotNull [] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @param bits  The bitboard.
+     * @param index The index of the cell.
+     */
+    public static void set(long @NotNull [] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * @param bits  The bitboard.
+     * @param index The index of the cell.
+     */
+    public static void clear(long @NotNull [] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * @param bits   The bitboard.
+     * @param subset The bitboard to check, which must not be longer than {@code bits}.
+     * @return Whether every bit set in {@code subset} is also set in {@code bits}.
+     */
+    public static boolean containsAll(long @NotNull [] bits, long @NotNull [] subset) {
+        for (int i = 0; i < subset.length; i++) {
+            if ((bits[i] & subset[i]) != subset[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param bits The bitboard.
+     * @return The number of bits set.
+     */
+    public static int count(long @NotNull [] bits) {
+        var count = 0;
+        for (final var word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,542 @@
+package hk.ust.comp3021.game;
+
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.entities.Box;
+import hk.ust.comp3021.entities.Empty;
+import hk.ust.comp3021.entities.Entity;
+import hk.ust.comp3021.entities.Player;
+import hk.ust.comp3021.entities.Wall;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A flat, primitive representation of the cells on a game board.
+ * <p>
+ * Cells are stored row by row in a byte array and addressed by their index {@code y * width + x}.
+ * Each cell holds a code denoting the entity currently occupying it:
+ * <li>{@link #ABSENT} for positions that are not part of the map.</li>
+ * <li>{@link #EMPTY} and {@link #WALL} for empty cells and walls.</li>
+ * <li>{@link #PLAYER} or {@link #BOX} combined with the player id in the lower bits for players and boxes.</li>
+ * <p>
+ * Every write goes through {@link #set(int, byte)}, which keeps the position of each player, the boxes of each player
+ * (both as a list and as a {@link Bitboard}), the number of boxes on destinations and the Zobrist hash of the board up
+ * to date, so none of them requires a scan of the board.
+ * <p>
+ * Boards can be forked in constant time (see {@link #fork()}). The forked boards share their cells and indexes until
+ * one of them is written to, at which point the writing board copies them.
+ */
+final class Board {
+
+    static final byte ABSENT = 0;
+
+    static final byte EMPTY = 1;
+
+    static final byte WALL = 2;
+
+    static final byte PLAYER = 0x20;
+
+    static final byte BOX = 0x40;
+
+    static final int ID_MASK = 0x1F;
+
+    /**
+     * The maximum number of players on a board.
+     */
+    static final int MAX_PLAYERS = 26;
+
+    /**
+     * The maximum number of cells of a board whose positions are interned (see {@link #positionOf(int)}).
+     */
+    private static final int MAX_INTERNED = 1 << 22;
+
+    /**
+     * Seed of the Zobrist keys.
+     * The seed is fixed so that hashes are comparable across runs.
+     */
+    private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+
+    private static final Entity[] ENTITIES = new Entity[BOX + MAX_PLAYERS];
+
+    static {
+        ENTITIES[EMPTY] = Empty.of();
+        ENTITIES[WALL] = Wall.of();
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            ENTITIES[PLAYER + id] = Player.of(id);
+            ENTITIES[BOX + id] = Box.of(id);
+        }
+    }
+
+    final int width;
+
+    final int height;
+
+    byte[] cells;
+
+    /**
+     * The destinations as a bitboard, shared by all forks.
+     */
+    private final long[] destinations;
+
+    private final int destinationCount;
+
+    /**
+     * The walls as a bitboard, shared by all forks, as walls never move.
+     */
+    private final long[] walls;
+
+    /**
+     * The static analyses of the map, shared by all forks and computed on first use.
+     */
+    private final MapAnalysis analysis;
+
+    /**
+     * The positions of the cells, created on first use, shared by all forks and reclaimed with them,
+     * or null if the board is too large for its positions to be interned.
+     */
+    private final Position @Nullable [] positions;
+
+    private int[] playerCells = new int[MAX_PLAYERS];
+
+    private int[][] boxCells = new int[MAX_PLAYERS][];
+
+    private int[] boxCounts = new int[MAX_PLAYERS];
+
+    private int[] boxSlots;
+
+    /**
+     * The boxes of each player as bitboards, or null for players without boxes.
+     */
+    private long[][] boxBits = new long[MAX_PLAYERS][];
+
+    private int boxesOnDestinations;
+
+    private long hash;
+
+    /**
+     * Whether the arrays above may be shared with a forked board, in which case they must be copied before writing.
+     */
+    private boolean shared = false;
+
+    /**
+     * Create a board with all cells absent.
+     *
+     * @param width        Width of the board.
+     * @param height       Height of the board.
+     * @param destinations The box destinations. Destinations outside the board can never be occupied.
+     * @throws IllegalArgumentException if the board is too large to be represented.
+     */
+    Board(int width, int height, @NotNull Set<Position> destinations) {
+        this.destinations = Bitboard.create(width, height);
+        this.walls = Bitboard.create(width, height);
+        this.analysis = new MapAnalysis();
+        this.positions = (long) width * height <= MAX_INTERNED ? new Position[width * height] : null;
+        this.width = width;
+        this.height = height;
+        this.cells = new byte[width * height];
+        this.destinationCount = destinations.size();
+        this.boxSlots = new int[width * height];
+        for (final var destination : destinations) {
+            final var index = indexOf(destination);
+            if (index >= 0)
+                Bitboard.set(this.destinations, index);
+        }
+        Arrays.fill(this.playerCells, -1);
+    }
+
+    private Board(@NotNull Board source) {
+        this.width = source.width;
+        this.height = source.height;
+        this.cells = source.cells;
+        this.destinations = source.destinations;
+        this.destinationCount = source.destinationCount;
+        this.walls = source.walls;
+        this.analysis = source.analysis;
+        this.positions = source.positions;
+        this.playerCells = source.playerCells;
+        this.boxCells = source.boxCells;
+        this.boxCounts = source.boxCounts;
+        this.boxSlots = source.boxSlots;
+        this.boxBits = source.boxBits;
+        this.boxesOnDestinations = source.boxesOnDestinations;
+        this.hash = source.hash;
+        this.shared = true;
+    }
+
+    /**
+     * Create a copy of this board in constant time.
+     * Both boards share their cells until either of them is written to, and the destinations forever.
+     *
+     * @return The forked board.
+     */
+    @NotNull Board fork() {
+        this.shared = true;
+        return new Board(this);
+    }
+
+    /**
+     * Rebuild the player and box indexes and the walls after {@link #cells} has been filled directly.
+     * This must only be called before the board is forked.
+     *
+     * @throws IllegalArgumentException if a cell holds an invalid code.
+     */
+    void reindex() {
+        own();
+        Arrays.fill(this.playerCells, -1);
+        Arrays.fill(this.boxCounts, 0);
+        Arrays.fill(this.boxBits, null);
+        Arrays.fill(this.walls, 0);
+        this.boxesOnDestinations = 0;
+        this.hash = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (!isValid(cells[i]))
+                throw new IllegalArgumentException("invalid cell code: " + cells[i]);
+            index(i, cells[i]);
+            if (cells[i] == WALL)
+                Bitboard.set(walls, i);
+            hash ^= zobrist(i, cells[i]);
+        }
+    }
+
+    /**
+     * @param x The horizontal displacement.
+     * @param y The vertical displacement.
+     * @return The index of the cell, or -1 if the position is outside the board.
+     */
+    int indexOf(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return -1;
+        return y * width + x;
+    }
+
+    /**
+     * @param position The position.
+     * @return The index of the cell, or -1 if the position is outside the board.
+     */
+    int indexOf(@NotNull Position position) {
+        return indexOf(position.x(), position.y());
+    }
+
+    /**
+     * Positions of cells are interned per map, so the same instance is returned for the same cell by this board and
+     * all its forks, unless the board is too large.
+     *
+     * @param index The index of the cell.
+     * @return The position of the cell.
+     */
+    @NotNull Position positionOf(int index) {
+        final var positions = this.positions;
+        if (positions == null)
+            return Position.of(index % width, index / width);
+        var position = positions[index];
+        if (position == null) {
+            // Racing threads may both create the position, which is harmless as positions are values.
+            position = Position.of(index % width, index / width);
+            positions[index] = position;
+        }
+        return position;
+    }
+
+    /**
+     * @param index The index of the cell, or -1.
+     * @param move  The move.
+     * @return The index of the cell the move leads to, or -1 if it is outside the board.
+     */
+    int neighbourOf(int index, @NotNull Move move) {
+        if (index < 0)
+            return -1;
+        final var x = index % width + Move.dx(move.getDirection());
+        final var y = index / width + Move.dy(move.getDirection());
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return -1;
+        return move.nextIndex(index, width);
+    }
+
+    /**
+     * @param index The index of the cell, or -1.
+     * @return The code of the cell. Cells outside the board are {@link #ABSENT}.
+     */
+    byte get(int index) {
+        return index < 0 ? ABSENT : cells[index];
+    }
+
+    /**
+     * Replace the content of a cell.
+     *
+     * @param index The index of the cell.
+     * @param code  The new code of the cell.
+     */
+    void set(int index, byte code) {
+        if (shared)
+            own();
+        unindex(index, cells[index]);
+        hash ^= zobrist(index, cells[index]) ^ zobrist(index, code);
+        cells[index] = code;
+        index(index, code);
+    }
+
+    /**
+     * Move the content of one cell to another, leaving the source cell {@link #EMPTY}.
+     *
+     * @param from The index of the source cell.
+     * @param to   The index of the target cell.
+     */
+    void move(int from, int to) {
+        final var code = cells[from];
+        set(from, EMPTY);
+        set(to, code);
+    }
+
+    /**
+     * @param id The player id.
+     * @return The index of the cell occupied by the player, or -1 if the player is not on the board.
+     */
+    int playerCell(int id) {
+        return id < 0 || id >= MAX_PLAYERS ? -1 : playerCells[id];
+    }
+
+    /**
+     * @param id The player id.
+     * @return The indexes of the cells occupied by boxes of the player, in no particular order.
+     */
+    int @NotNull [] boxCells(int id) {
+        if (id < 0 || id >= MAX_PLAYERS || boxCounts[id] == 0)
+            return new int[0];
+        return Arrays.copyOf(boxCells[id], boxCounts[id]);
+    }
+
+    /**
+     * @return The Zobrist hash of the cells, i.e., the XOR of the keys of every present cell and its content.
+     */
+    long hash() {
+        return hash;
+    }
+
+    /**
+     * @param id The player id.
+     * @return The number of boxes of the player.
+     */
+    int boxCount(int id) {
+        return id < 0 || id >= MAX_PLAYERS ? 0 : boxCounts[id];
+    }
+
+    /**
+     * @return A copy of the walls as a bitboard.
+     */
+    long @NotNull [] wallBits() {
+        return walls.clone();
+    }
+
+    /**
+     * @return A copy of the destinations as a bitboard.
+     */
+    long @NotNull [] destinationBits() {
+        return destinations.clone();
+    }
+
+    /**
+     * @param index The index of the cell.
+     * @return Whether the cell is a box destination.
+     */
+    boolean isDestination(int index) {
+        return Bitboard.get(destinations, index);
+    }
+
+    /**
+     * @return A copy of the dead squares as a bitboard (see {@link MapAnalysis#deadSquares(Board)}).
+     */
+    long @NotNull [] deadSquareBits() {
+        return analysis.deadSquares(this).clone();
+    }
+
+    /**
+     * @param index The index of the cell, or -1.
+     * @return Whether a box on the cell can never be pushed onto a destination.
+     */
+    boolean isDeadSquare(int index) {
+        return index >= 0 && Bitboard.get(analysis.deadSquares(this), index);
+    }
+
+    /**
+     * @param destination The index of the destination cell.
+     * @param index       The index of the cell, or -1.
+     * @return The minimum number of pushes to bring a box from the cell onto the destination, ignoring all other
+     * entities, or -1 if that is impossible (see {@link MapAnalysis}).
+     * @throws IllegalArgumentException if the destination cell is not a destination.
+     */
+    int pushDistance(int destination, int index) {
+        final var distances = analysis.pushDistances(this, destination);
+        if (distances == null)
+            throw new IllegalArgumentException("not a destination");
+        return index < 0 ? MapAnalysis.UNREACHABLE : distances[index];
+    }
+
+    /**
+     * @param index The index of the cell, or -1.
+     * @return The minimum number of pushes to bring a box from the cell onto any destination, ignoring all other
+     * entities, or -1 if that is impossible (see {@link MapAnalysis}).
+     */
+    int minPushDistance(int index) {
+        return index < 0 ? MapAnalysis.UNREACHABLE : analysis.minPushDistances(this)[index];
+    }
+
+    /**
+     * @param id The player id.
+     * @return A copy of the boxes of the player as a bitboard.
+     */
+    long @NotNull [] boxBits(int id) {
+        if (id < 0 || id >= MAX_PLAYERS || boxBits[id] == null)
+            return new long[walls.length];
+        return boxBits[id].clone();
+    }
+
+    /**
+     * @return Whether every destination is occupied by a box.
+     */
+    boolean allDestinationsOccupied() {
+        return boxesOnDestinations == destinationCount;
+    }
+
+    /**
+     * Copy the arrays possibly shared with forked boards, so that this board can be written to.
+     */
+    private void own() {
+        if (!shared)
+            return;
+        this.cells = cells.clone();
+        this.playerCells = playerCells.clone();
+        this.boxCounts = boxCounts.clone();
+        this.boxSlots = boxSlots.clone();
+        this.boxCells = boxCells.clone();
+        this.boxBits = boxBits.clone();
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (boxCells[id] != null)
+                boxCells[id] = boxCells[id].clone();
+            if (boxBits[id] != null)
+                boxBits[id] = boxBits[id].clone();
+        }
+        this.shared = false;
+    }
+
+    private void index(int index, byte code) {
+        if (isPlayer(code)) {
+            playerCells[idOf(code)] = index;
+        } else if (isBox(code)) {
+            final var id = idOf(code);
+            var boxes = boxCells[id];
+            if (boxes == null) {
+                boxes = new int[4];
+                boxCells[id] = boxes;
+            } else if (boxCounts[id] == boxes.length) {
+                boxes = Arrays.copyOf(boxes, boxes.length * 2);
+                boxCells[id] = boxes;
+            }
+            boxSlots[index] = boxCounts[id];
+            boxes[boxCounts[id]++] = index;
+            if (boxBits[id] == null)
+                boxBits[id] = new long[walls.length];
+            Bitboard.set(boxBits[id], index);
+            if (Bitboard.get(destinations, index))
+                boxesOnDestinations++;
+        }
+    }
+
+    private void unindex(int index, byte code) {
+        if (isPlayer(code)) {
+            if (playerCells[idOf(code)] == index)
+                playerCells[idOf(code)] = -1;
+        } else if (isBox(code)) {
+            final var id = idOf(code);
+            final var boxes = boxCells[id];
+            final var last = boxes[--boxCounts[id]];
+            boxes[boxSlots[index]] = last;
+            boxSlots[last] = boxSlots[index];
+            Bitboard.clear(boxBits[id], index);
+            if (Bitboard.get(destinations, index))
+                boxesOnDestinations--;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Board board)) return false;
+        return hash == board.hash && width == board.width && height == board.height && Arrays.equals(cells, board.cells);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(hash);
+    }
+
+    /**
+     * Computes the Zobrist key of a cell holding the given code.
+     * Instead of a table of random keys per cell and code, the keys are derived by mixing the cell index and the code
+     * with the SplitMix64 finalizer, which is as well distributed and needs no memory proportional to the board.
+     *
+     * @param index The index of the cell.
+     * @param code  The code of the cell.
+     * @return The key, which is 0 for absent cells.
+     */
+    static long zobrist(int index, byte code) {
+        if (code == ABSENT)
+            return 0;
+        var z = (((long) index << 7) | code) * 0x9E3779B97F4A7C15L + ZOBRIST_SEED;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param entity The entity, or null for absent cells.
+     * @return The code of the entity.
+     * @throws IllegalArgumentException if the entity belongs to a player id that cannot be represented.
+     */
+    static byte encode(@Nullable Entity entity) {
+        return switch (entity) {
+            case Empty ignored -> EMPTY;
+            case Wall ignored -> WALL;
+            case Player p -> (byte) (PLAYER | checkId(p.getId()));
+            case Box b -> (byte) (BOX | checkId(b.getPlayerId()));
+            case null -> ABSENT;
+        };
+    }
+
+    /**
+     * @param code The code of the cell.
+     * @return The entity denoted by the code, or null for absent cells.
+     */
+    static @Nullable Entity decode(byte code) {
+        return ENTITIES[code];
+    }
+
+    /**
+     * @param code The code of a cell.
+     * @return Whether the code denotes an entity or an absent cell.
+     */
+    static boolean isValid(byte code) {
+        return code == ABSENT || code == EMPTY || code == WALL
+                || (code >= PLAYER && code < PLAYER + MAX_PLAYERS)
+                || (code >= BOX && code < BOX + MAX_PLAYERS);
+    }
+
+    static boolean isPlayer(byte code) {
+        return (code & PLAYER) != 0;
+    }
+
+    static boolean isBox(byte code) {
+        return (code & BOX) != 0;
+    }
+
+    static int idOf(byte code) {
+        return code & ID_MASK;
+    }
+
+    private static int checkId(int id) {
+        if (id < 0 || id >= MAX_PLAYERS)
+            throw new IllegalArgumentException("invalid player id: " + id);
+        return id;
+    }
+}
@@ -0,0 +1,197 @@
+package hk.ust.comp3021.game;
+
+import hk.ust.comp3021.actions.Move;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks that a map is closed, i.e., that no region of non-wall cells escapes the map through an absent cell.
+ * <p>
+ * Small maps are flood-filled region by region, starting from the players, so that the region escaping the map is
+ * found directly. Large maps are first scanned for leaking cells row by row on the common fork-join pool, and only
+ * maps found to leak are flood-filled, so that the same region is described in the error either way.
+ * Both only use the primitive cells of a {@link Board}.
+ */
+final class BoundaryValidator {
+
+    /**
+     * Maps with at least this many cells are scanned in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * The number of cells below which a parallel scan task is not split any further.
+     */
+    private static final int CELLS_PER_TASK = 1 << 16;
+
+    private BoundaryValidator() {
+    }
+
+    /**
+     * @param board The board to validate.
+     * @throws IllegalArgumentException if a region of the board is not closed.
+     */
+    static void validate(@NotNull Board board) {
+        validate(board, PARALLEL_THRESHOLD, CELLS_PER_TASK);
+    }
+
+    /**
+     * @param board             The board to validate.
+     * @param parallelThreshold The number of cells from which the board is scanned in parallel.
+     * @param cellsPerTask      The number of cells below which a parallel scan task is not split any further.
+     * @throws IllegalArgumentException if a region of the board is not closed.
+     */
+    static void validate(@NotNull Board board, int parallelThreshold, int cellsPerTask) {
+        final var parallel = board.cells.length >= parallelThreshold;
+        var leak = parallel
+                ? ForkJoinPool.commonPool().invoke(new LeakScan(board, 0, board.height, cellsPerTask))
+                : findLeakByFloodFill(board);
+        if (parallel && leak >= 0) // report the region the flood fill would have found first
+            leak = findLeakByFloodFill(board);
+        if (leak >= 0)
+            throw new IllegalArgumentException("not a closed boundary map: " + describeRegion(board, leak));
+    }
+
+    /**
+     * Flood-fill the regions of the board, starting from the regions of the players.
+     *
+     * @param board The board.
+     * @return The index of a cell next to an absent cell, or -1 if every region is closed.
+     */
+    private static int findLeakByFloodFill(@NotNull Board board) {
+        final var visited = Bitboard.create(board.width, board.height);
+        final var queue = new int[board.cells.length];
+        for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+            final var cell = board.playerCell(id);
+            if (cell >= 0 && !Bitboard.get(visited, cell)) {
+                final var leak = fill(board, cell, visited, queue, true);
+                if (leak >= 0)
+                    return leak;
+            }
+        }
+        for (int cell = 0; cell < board.cells.length; cell++) {
+            if (isOpen(board.cells[cell]) && !Bitboard.get(visited, cell)) {
+                final var leak = fill(board, cell, visited, queue, true);
+                if (leak >= 0)
+                    return leak;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Flood-fill the region of a cell.
+     *
+     * @param board   The board.
+     * @param start   The index of a non-wall cell of the region.
+     * @param visited The cells visited so far, which is updated with the cells of the region.
+     * @param queue   A queue large enough to hold every cell of the board.
+     * @param stop    Whether to stop at the first cell next to an absent cell instead of filling the whole region.
+     * @return The index of a cell of the region next to an absent cell, or -1 if the region is closed.
+     */
+    private static int fill(@NotNull Board board, int start, long @NotNull [] visited, int @NotNull [] queue,
+                            boolean stop) {
+        var leak = -1;
+        var head = 0;
+        var tail = 0;
+        queue[tail++] = start;
+        Bitboard.set(visited, start);
+        while (head < tail) {
+            final var cell = queue[head++];
+            final var x = cell % board.width;
+            final var y = cell / board.width;
+            for (int direction = Move.DOWN; direction <= Move.UP; direction++) {
+                final var next = board.indexOf(x + Move.dx(direction), y + Move.dy(direction));
+                final var code = board.get(next);
+                if (code == Board.ABSENT) {
+                    if (stop)
+                        return cell;
+                    leak = cell;
+                } else if (code != Board.WALL && !Bitboard.get(visited, next)) {
+                    Bitboard.set(visited, next);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return leak;
+    }
+
+    /**
+     * @param board The board.
+     * @param leak  The index of a cell next to an absent cell.
+     * @return A description of the region of the cell and where it leaks.
+     */
+    private static @NotNull String describeRegion(@NotNull Board board, int leak) {
+        final var visited = Bitboard.create(board.width, board.height);
+        final var queue = new int[board.cells.length];
+        fill(board, leak, visited, queue, false);
+        final var players = new StringBuilder();
+        for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+            final var cell = board.playerCell(id);
+            if (cell >= 0 && Bitboard.get(visited, cell))
+                players.append((char) ('A' + id));
+        }
+        final var size = Bitboard.count(visited);
+        return "the region of " + size + (size == 1 ? " cell" : " cells")
+                + (players.isEmpty() ? "" : " with player " + players)
+                + " leaks at line " + (leak / board.width + 2) + ", column " + (leak % board.width + 1);
+    }
+
+    private static boolean isOpen(byte code) {
+        return code != Board.ABSENT && code != Board.WALL;
+    }
+
+    /**
+     * Finds a non-wall cell next to an absent cell in a range of rows, splitting the range across the pool.
+     */
+    private static final class LeakScan extends RecursiveTask<Integer> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient Board board;
+
+        private final int fromRow;
+
+        private final int toRow;
+
+        private final int cellsPerTask;
+
+        private LeakScan(@NotNull Board board, int fromRow, int toRow, int cellsPerTask) {
+            this.board = board;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.cellsPerTask = cellsPerTask;
+        }
+
+        @Override
+        protected Integer compute() {
+            if ((long) (toRow - fromRow) * board.width <= cellsPerTask || toRow - fromRow == 1)
+                return scan();
+            final var middle = (fromRow + toRow) >>> 1;
+            final var upper = new LeakScan(board, fromRow, middle, cellsPerTask);
+            final var lower = new LeakScan(board, middle, toRow, cellsPerTask);
+            lower.fork();
+            final int upperLeak = upper.compute();
+            final int lowerLeak = lower.join();
+            return upperLeak >= 0 ? upperLeak : lowerLeak;
+        }
+
+        private int scan() {
+            for (int y = fromRow; y < toRow; y++) {
+                for (int x = 0; x < board.width; x++) {
+                    if (!isOpen(board.cells[y * board.width + x]))
+                        continue;
+                    for (int direction = Move.DOWN; direction <= Move.UP; direction++) {
+                        if (board.get(board.indexOf(x + Move.dx(direction), y + Move.dy(direction))) == Board.ABSENT)
+                            return y * board.width + x;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package hk.ust.comp3021.game;
 
-import hk.ust.comp3021.actions.Move;
 import hk.ust.comp3021.entities.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -22,6 +24,11 @@ import java.util.stream.Collectors;
  */
 public class GameMap {
 
+    /**
+     * The entities of maps created by {@link #GameMap(int, int, Set, int)}, or null for parsed maps,
+     * whose entities are only kept in {@link #board}.
+     */
+    @Nullable
     private final Map<Position, Entity> map;
 
     private final int maxWidth;
@@ -32,6 +39,12 @@ public class GameMap {
 
     private final int undoLimit;
 
+    /**
+     * The board built from this map, from which every {@link GameState} of this map is forked.
+     * For maps that are not parsed, it is built on first use and discarded whenever the map is modified.
+     */
+    @Nullable
+    private volatile Board board;
 
     /**
      * Create a new GameMap with width, height, set of box destinations and undo limit.
@@ -52,12 +65,20 @@ public class GameMap {
         this.map = new HashMap<>();
     }
 
-    private GameMap(Map<Position, Entity> map, Set<Position> destinations, int undoLimit) {
-        this.map = Collections.unmodifiableMap(map);
+    /**
+     * Create a parsed GameMap backed by a board, which cannot be modified.
+     *
+     * @param board        The board holding the initial entities.
+     * @param destinations Set of box destination positions.
+     * @param undoLimit    Undo limit.
+     */
+    GameMap(@NotNull Board board, @NotNull Set<Position> destinations, int undoLimit) {
+        this.map = null;
+        this.board = board;
         this.destinations = Collections.unmodifiableSet(destinations);
         this.undoLimit = undoLimit;
-        this.maxWidth = map.keySet().stream().mapToInt(Position::x).max().orElse(0) + 1;
-        this.maxHeight = map.keySet().stream().mapToInt(Position::y).max().orElse(0) + 1;
+        this.maxWidth = board.width;
+        this.maxHeight = board.height;
     }
 
     /**
@@ -96,69 +117,35 @@ public class GameMap {
      *                                  or if there are players that have no corresponding boxes.
      */
     public static GameMap parse(String mapText) {
-        final var players = new HashSet<Integer>();
-        final var map = new HashMap<Position, Entity>();
-        final var destinations = new HashSet<Position>();
-        AtomicInteger lineNumber = new AtomicInteger();
-        final var firstLine = mapText.lines().findFirst();
-        if (firstLine.isEmpty())
-            throw new IllegalArgumentException("Invalid map file.");
-        var undoLimit = 0;
-        try {
-            undoLimit = Integer.parseInt(firstLine.get());
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Failed to parse undo limit.", e);
-        }
-        mapText.lines().skip(1).forEachOrdered(line -> {
-            int x = 0;
-            int y = lineNumber.getAndIncrement();
-            for (char c : line.toCharArray()) {
-                if (c == '#') { // walls
-                    map.put(Position.of(x, y), new Wall());
-                } else if (c == '@') {  // destinations
-                    destinations.add(new Position(x, y));
-                    map.put(Position.of(x, y), new Empty());
-                } else if (Character.isLowerCase(c)) { // lower case letters are boxes for each player (corresponding upper case letter)
-                    final var playerId = Character.toUpperCase(c) - 'A';
-                    map.put(Position.of(x, y), new Box(playerId));
-                } else if (Character.isUpperCase(c)) {
-                    final var playerId = c - 'A';
-                    if (players.contains(playerId)) {
-                        throw new IllegalArgumentException("duplicate players detected in the map");
-                    }
-                    players.add(playerId);
-                    map.put(new Position(x, y), new Player(playerId));
-                } else if (c == '.') {
-                    map.put(Position.of(x, y), new Empty());
-                }
-                x++;
-            }
-        });
-
-        // validate closed boundary map
-        final var moves = new Move[]{new Move.Down(-1), new Move.Up(-1), new Move.Left(-1), new Move.Right(-1)};
-        final var closedBoundary = map.entrySet().parallelStream()
-                .filter(entry -> !(entry.getValue() instanceof Wall))
-                .allMatch(entry -> Arrays.stream(moves)
-                        .allMatch(m -> map.get(m.nextPosition(entry.getKey())) != null));
-        if (!closedBoundary)
-            throw new IllegalArgumentException("not a closed boundary map");
-
-        final var allBoxes = map.values().stream()
-                .filter(Box.class::isInstance)
-                .map(Box.class::cast).toList();
-        final var allReferencedPlayers = allBoxes.stream()
-                .map(Box::getPlayerId)
-                .collect(Collectors.toSet());
-        if (undoLimit < -1)
-            throw new IllegalArgumentException("invalid undo limit");
-        if (players.size() == 0)
-            throw new IllegalArgumentException("no player");
-        if (destinations.size() != allBoxes.size())
-            throw new IllegalArgumentException("mismatch destinations");
-        if (!allReferencedPlayers.equals(players))
-            throw new IllegalArgumentException("unmatched players");
-        return new GameMap(map, destinations, undoLimit);
+        return MapParser.parse(ByteBuffer.wrap(mapText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Parses the map from its UTF-8 encoded representation in a buffer, in the format of {@link #parse(String)}.
+     * The map is parsed in a single pass over the bytes, without decoding them into a string first.
+     *
+     * @param mapBytes The bytes of the map, from the position to the limit of the buffer.
+     *                 The position of the buffer is not changed.
+     * @return The parsed GameMap object.
+     * @throws IllegalArgumentException if the map is invalid, see {@link #parse(String)}.
+     *                                  The message includes the line and column of the error where there is one.
+     */
+    public static GameMap parse(@NotNull ByteBuffer mapBytes) {
+        return MapParser.parse(mapBytes);
+    }
+
+    /**
+     * Parses the map from its UTF-8 encoded representation in a stream, in the format of {@link #parse(String)}.
+     * The stream is read in chunks until its end, but it is not closed.
+     *
+     * @param mapStream The stream to read the map from.
+     * @return The parsed GameMap object.
+     * @throws IOException              if the stream cannot be read.
+     * @throws IllegalArgumentException if the map is invalid, see {@link #parse(String)}.
+     *                                  The message includes the line and column of the error where there is one.
+     */
+    public static GameMap parse(@NotNull InputStream mapStream) throws IOException {
+        return MapParser.parse(mapStream);
     }
 
     /**
@@ -169,6 +156,10 @@ public class GameMap {
      */
     @Nullable
     public Entity getEntity(Position position) {
+        if (map == null) {
+            final var board = board();
+            return Board.decode(board.get(board.indexOf(position)));
+        }
         return map.get(position);
     }
 
@@ -177,9 +168,43 @@ public class GameMap {
      *
      * @param position the position in the game map to put the entity.
      * @param entity   the entity to put into game map.
+     * @throws UnsupportedOperationException if the game map is parsed.
      */
     public void putEntity(Position position, Entity entity) {
+        if (this.map == null)
+            throw new UnsupportedOperationException("parsed game maps cannot be modified");
         this.map.put(position, entity);
+        this.board = null;
+    }
+
+    /**
+     * Get the board holding the initial entities of this map.
+     * The board is built once and shared, so it must only be forked and never be written to.
+     *
+     * @return The board.
+     * @throws IllegalArgumentException if the map is too large or contains entities that cannot be represented.
+     */
+    @NotNull Board board() {
+        var board = this.board;
+        if (board == null) {
+            // Racing threads may both build the board, which is harmless as the boards are equal.
+            board = new Board(maxWidth, maxHeight, destinations);
+            for (final var entry : map.entrySet()) {
+                final var index = board.indexOf(entry.getKey());
+                if (index >= 0)
+                    board.cells[index] = Board.encode(entry.getValue());
+            }
+            board.reindex();
+            this.board = board;
+        }
+        return board;
+    }
+
+    /**
+     * @return Whether this map has been validated, which is the case for all parsed and loaded maps.
+     */
+    boolean isValidated() {
+        return map == null;
     }
 
     /**
@@ -191,6 +216,115 @@ public class GameMap {
         return destinations;
     }
 
+    /**
+     * Get all walls as a {@link Bitboard} of width {@link #getMaxWidth()}.
+     *
+     * @return a new bitboard.
+     * @throws IllegalArgumentException if the map is too large to be represented as a bitboard.
+     */
+    public long @NotNull [] getWallBits() {
+        if (map == null)
+            return board().wallBits();
+        return toBits(map.entrySet().stream()
+                .filter(entry -> entry.getValue() instanceof Wall)
+                .map(Map.Entry::getKey)
+                .toList());
+    }
+
+    /**
+     * Get all box destination positions as a {@link Bitboard} of width {@link #getMaxWidth()}.
+     *
+     * @return a new bitboard.
+     * @throws IllegalArgumentException if the map is too large to be represented as a bitboard.
+     */
+    public long @NotNull [] getDestinationBits() {
+        return toBits(destinations);
+    }
+
+    /**
+     * Get the dead squares as a {@link Bitboard} of width {@link #getMaxWidth()}, i.e., the non-wall cells from which a
+     * box can never be pushed onto any destination, even without other entities in the way.
+     * This includes corners and cells along walls without destinations.
+     * Destinations are shared by all players, so the dead squares are the same for the boxes of every player.
+     * <p>
+     * The dead squares are computed once, on first use, and shared by all {@link GameState}s of this map.
+     *
+     * @return a new bitboard.
+     * @throws IllegalArgumentException if the map is too large to be represented as a bitboard.
+     */
+    public long @NotNull [] getDeadSquareBits() {
+        return board().deadSquareBits();
+    }
+
+    /**
+     * Check whether a box at the given position can never be pushed onto any destination,
+     * see {@link #getDeadSquareBits()}.
+     *
+     * @param position the position.
+     * @return true if the position is a dead square.
+     */
+    public boolean isDeadSquare(@NotNull Position position) {
+        final var board = board();
+        return board.isDeadSquare(board.indexOf(position));
+    }
+
+    /**
+     * Get the minimum number of pushes needed to bring a box from the given position onto the given destination,
+     * respecting walls but ignoring all other entities.
+     * This is a lower bound of the pushes needed in any game of this map.
+     * <p>
+     * The distances to each destination are computed once, on first use, and shared by all threads and all
+     * {@link GameState}s of this map, so later calls take constant time.
+     *
+     * @param destination the destination.
+     * @param position    the position of the box.
+     * @return the number of pushes, or -1 if the box can never be pushed onto the destination.
+     * Distances saturate at {@link Short#MAX_VALUE}.
+     * @throws IllegalArgumentException if the destination is not a destination of this map.
+     */
+    public int getPushDistance(@NotNull Position destination, @NotNull Position position) {
+        final var board = board();
+        return board.pushDistance(board.indexOf(destination), board.indexOf(position));
+    }
+
+    /**
+     * Get the minimum number of pushes needed to bring a box from the given position onto any destination,
+     * see {@link #getPushDistance(Position, Position)}.
+     *
+     * @param position the position of the box.
+     * @return the number of pushes, or -1 if the box can never be pushed onto a destination.
+     */
+    public int getMinPushDistance(@NotNull Position position) {
+        final var board = board();
+        return board.minPushDistance(board.indexOf(position));
+    }
+
+    /**
+     * Get the initial positions of all boxes of the player with the given id as a {@link Bitboard} of width
+     * {@link #getMaxWidth()}.
+     *
+     * @param id player id.
+     * @return a new bitboard.
+     * @throws IllegalArgumentException if the map is too large to be represented as a bitboard.
+     */
+    public long @NotNull [] getBoxBitsByPlayerId(int id) {
+        if (map == null)
+            return board().boxBits(id);
+        return toBits(map.entrySet().stream()
+                .filter(entry -> entry.getValue() instanceof Box box && box.getPlayerId() == id)
+                .map(Map.Entry::getKey)
+                .toList());
+    }
+
+    private long[] toBits(Collection<Position> positions) {
+        final var bits = Bitboard.create(maxWidth, maxHeight);
+        for (final var position : positions) {
+            if (position.x() >= 0 && position.y() >= 0 && position.x() < maxWidth && position.y() < maxHeight)
+                Bitboard.set(bits, position.y() * maxWidth + position.x());
+        }
+        return bits;
+    }
+
     /**
      * Get the undo limit of the game map.
      *
@@ -206,6 +340,15 @@ public class GameMap {
      * @return a set of player id.
      */
     public Set<Integer> getPlayerIds() {
+        if (this.map == null) {
+            final var board = board();
+            final var ids = new HashSet<Integer>();
+            for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+                if (board.playerCell(id) >= 0)
+                    ids.add(id);
+            }
+            return ids;
+        }
         return this.map.values().stream()
                 .filter(it -> it instanceof Player)
                 .map(it -> ((Player) it).getId())
@@ -1,15 +1,14 @@
 package hk.ust.comp3021.game;
 
-import hk.ust.comp3021.entities.Box;
-import hk.ust.comp3021.entities.Empty;
+import hk.ust.comp3021.actions.Move;
 import hk.ust.comp3021.entities.Entity;
 import hk.ust.comp3021.entities.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
 
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * The state of the Sokoban Game.
@@ -22,43 +21,53 @@ import java.util.stream.Collectors;
  * <li>A move history.</li>
  * <li>Current location of player.</li>
  * <li>Undo quota left.</li>
+ * <p>
+ * The entities are kept in a flat {@link Board} indexed by {@code y * width + x} rather than a map of positions,
+ * so that moving an entity neither hashes positions nor allocates.
  */
 public class GameState {
 
-    private final Stack<Transition> history = new Stack<>();
-
-    private final Map<Position, Entity> entities;
+    private final UndoJournal history = new UndoJournal();
 
-    private final int boardWidth;
-
-    private final int boardHeight;
+    private final Board board;
 
     private final Set<Position> destinations;
 
     private int undoQuota;
 
-    private Transition currentTransition = new Transition();
-
     /**
      * Create a running game state from a game map.
      *
      * @param map the game map from which to create this game state.
      */
     public GameState(@NotNull GameMap map) {
-        this.entities = new HashMap<>();
-        this.boardWidth = map.getMaxWidth();
-        this.boardHeight = map.getMaxHeight();
-
-        for (int x = 0; x < boardWidth; x++) {
-            for (int y = 0; y < boardHeight; y++) {
-                final var pos = Position.of(x, y);
-                final var entity = map.getEntity(pos);
-                if (entity != null)
-                    this.entities.put(pos, entity);
-            }
-        }
+        this.board = map.board().fork();
         this.destinations = map.getDestinations();
         undoQuota = map.getUndoLimit().orElse(-1);
+        this.history.retain(undoQuota);
+    }
+
+    private GameState(@NotNull GameState source) {
+        this.board = source.board.fork();
+        this.destinations = source.destinations;
+        this.undoQuota = source.undoQuota;
+        this.history.retain(undoQuota);
+    }
+
+    /**
+     * Create an independent copy of this game state, e.g., to explore what would happen after some moves.
+     * <p>
+     * Forking takes constant time. The fork shares the destinations with this state, and the entities until either
+     * state moves an entity, at which point the moving state copies them.
+     * The fork starts with the same undo quota and an empty move history, so it cannot undo past the point it was
+     * forked at.
+     * <p>
+     * Forks can be moved on different threads, but this state must not be moved while it is being forked.
+     *
+     * @return The forked game state.
+     */
+    public @NotNull GameState fork() {
+        return new GameState(this);
     }
 
     /**
@@ -67,10 +76,13 @@ public class GameState {
      * @return The set of all the players.
      */
     public @NotNull Set<Player> getAllPlayers() {
-        return this.entities.values().stream()
-                .filter(entity -> entity instanceof Player)
-                .map(entity -> (Player) entity)
-                .collect(Collectors.toSet());
+        final var players = new HashSet<Player>();
+        for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+            final var cell = this.board.playerCell(id);
+            if (cell >= 0)
+                players.add((Player) Board.decode(this.board.get(cell)));
+        }
+        return players;
     }
 
     /**
@@ -80,10 +92,8 @@ public class GameState {
      * @return the current position of the player.
      */
     public @Nullable Position getPlayerPositionById(int id) {
-        return this.entities.entrySet().stream()
-                .filter(e -> e.getValue() instanceof Player p && p.getId() == id)
-                .map(Map.Entry::getKey)
-                .findFirst().orElse(null);
+        final var cell = this.board.playerCell(id);
+        return cell < 0 ? null : this.board.positionOf(cell);
     }
 
     /**
@@ -92,10 +102,68 @@ public class GameState {
      * @return a set of positions of all players.
      */
     public @NotNull Set<Position> getAllPlayerPositions() {
-        return this.entities.entrySet().stream()
-                .filter(e -> e.getValue() instanceof Player)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
+        final var positions = new HashSet<Position>();
+        for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+            final var cell = this.board.playerCell(id);
+            if (cell >= 0)
+                positions.add(this.board.positionOf(cell));
+        }
+        return positions;
+    }
+
+    /**
+     * Get current positions of all boxes that can be moved by the player with the given id.
+     *
+     * @param id player id.
+     * @return a set of positions of the boxes.
+     */
+    public @NotNull Set<Position> getBoxPositionsByPlayerId(int id) {
+        final var positions = new HashSet<Position>();
+        for (final var cell : this.board.boxCells(id)) {
+            positions.add(this.board.positionOf(cell));
+        }
+        return positions;
+    }
+
+    /**
+     * Get the index {@code y * width + x} of the cell at the given position.
+     *
+     * @param position the position.
+     * @return the index of the cell, or -1 if the position is outside the game map.
+     */
+    int indexOf(@NotNull Position position) {
+        return this.board.indexOf(position);
+    }
+
+    /**
+     * Get the position of the cell with the given index.
+     *
+     * @param index the index of the cell.
+     * @return the position of the cell.
+     */
+    @NotNull Position positionOf(int index) {
+        return this.board.positionOf(index);
+    }
+
+    /**
+     * Get the index of the cell a move leads to.
+     *
+     * @param index the index of the current cell, or -1.
+     * @param move  the move.
+     * @return the index of the next cell, or -1 if it is outside the game map.
+     */
+    int nextIndex(int index, @NotNull Move move) {
+        return this.board.neighbourOf(index, move);
+    }
+
+    /**
+     * Get the entity that is currently in the cell with the given index.
+     *
+     * @param index the index of the cell, or -1.
+     * @return the entity object.
+     */
+    @Nullable Entity getEntity(int index) {
+        return Board.decode(this.board.get(index));
     }
 
     /**
@@ -105,7 +173,7 @@ public class GameState {
      * @return the entity object.
      */
     public @Nullable Entity getEntity(@NotNull Position position) {
-        return this.entities.get(position);
+        return Board.decode(this.board.get(this.board.indexOf(position)));
     }
 
     /**
@@ -118,6 +186,93 @@ public class GameState {
         return destinations;
     }
 
+    /**
+     * Get the walls in the game map as a {@link Bitboard} of width {@link #getMapMaxWidth()}.
+     * This should be the same as that in {@link GameMap} class.
+     *
+     * @return a copy of the bitboard.
+     */
+    public long @NotNull [] getWallBits() {
+        return this.board.wallBits();
+    }
+
+    /**
+     * Get all box destination positions as a {@link Bitboard} of width {@link #getMapMaxWidth()}.
+     * This should be the same as that in {@link GameMap} class.
+     *
+     * @return a copy of the bitboard.
+     */
+    public long @NotNull [] getDestinationBits() {
+        return this.board.destinationBits();
+    }
+
+    /**
+     * Get the dead squares of the game map as a {@link Bitboard} of width {@link #getMapMaxWidth()}, i.e., the cells
+     * from which a box can never be pushed onto any destination.
+     * This should be the same as that in {@link GameMap} class, and is computed once for all states of a map.
+     *
+     * @return a copy of the bitboard.
+     */
+    public long @NotNull [] getDeadSquareBits() {
+        return this.board.deadSquareBits();
+    }
+
+    /**
+     * Check whether a box at the given position can never be pushed onto any destination.
+     *
+     * @param position the position.
+     * @return true if the position is a dead square.
+     */
+    public boolean isDeadSquare(@NotNull Position position) {
+        return this.board.isDeadSquare(this.board.indexOf(position));
+    }
+
+    /**
+     * Get the minimum number of pushes needed to bring a box from the given position onto the given destination,
+     * respecting walls but ignoring all other entities.
+     * This should be the same as that in {@link GameMap} class.
+     *
+     * @param destination the destination.
+     * @param position    the position of the box.
+     * @return the number of pushes, or -1 if the box can never be pushed onto the destination.
+     * @throws IllegalArgumentException if the destination is not a destination of the game map.
+     */
+    public int getPushDistance(@NotNull Position destination, @NotNull Position position) {
+        return this.board.pushDistance(this.board.indexOf(destination), this.board.indexOf(position));
+    }
+
+    /**
+     * Get the minimum number of pushes needed to bring a box from the given position onto any destination.
+     * This should be the same as that in {@link GameMap} class.
+     *
+     * @param position the position of the box.
+     * @return the number of pushes, or -1 if the box can never be pushed onto a destination.
+     */
+    public int getMinPushDistance(@NotNull Position position) {
+        return this.board.minPushDistance(this.board.indexOf(position));
+    }
+
+    /**
+     * Check whether a box in the cell with the given index can never be pushed onto any destination.
+     *
+     * @param index the index of the cell, or -1.
+     * @return true if the cell is a dead square.
+     */
+    boolean isDeadSquare(int index) {
+        return this.board.isDeadSquare(index);
+    }
+
+    /**
+     * Get current positions of all boxes that can be moved by the player with the given id as a {@link Bitboard} of
+     * width {@link #getMapMaxWidth()}.
+     *
+     * @param id player id.
+     * @return a copy of the bitboard.
+     */
+    public long @NotNull [] getBoxBitsByPlayerId(int id) {
+        return this.board.boxBits(id);
+    }
+
     /**
      * Get the undo quota currently left, i.e., the maximum number of undo actions that can be performed from now on.
      * If undo is unlimited,
@@ -140,7 +295,20 @@ public class GameState {
      * @return true is the game wins.
      */
     public boolean isWin() {
-        return this.destinations.stream().allMatch(p -> this.entities.get(p) instanceof Box);
+        return this.board.allDestinationsOccupied();
+    }
+
+    /**
+     * Get the Zobrist hash of the entities on the board.
+     * The hash is maintained incrementally by {@link #move(Position, Position)} and {@link #undo()}, so this method
+     * takes constant time.
+     * States with the same entities at the same positions have the same hash, in this and in any other run.
+     * The undo quota and the move history are not part of the hash.
+     *
+     * @return The 64-bit hash of the board.
+     */
+    public long stateHash() {
+        return this.board.hash();
     }
 
     /**
@@ -153,12 +321,12 @@ public class GameState {
      */
     public void move(@NotNull Position from, @NotNull Position to) {
         // move entity
-        final var entity = this.entities.remove(from);
-        this.entities.put(from, new Empty());
-        this.entities.put(to, entity);
+        final var fromIndex = this.board.indexOf(from);
+        final var toIndex = this.board.indexOf(to);
+        this.board.move(fromIndex, toIndex);
 
         // append to history
-        this.currentTransition.add(from, to);
+        this.history.record(fromIndex, toIndex);
     }
 
     /**
@@ -168,28 +336,10 @@ public class GameState {
      * <p>
      * Checkpoint is used in {@link GameState#undo()}.
      * Every undo actions reverts the game state to the last checkpoint.
+     * Only as many checkpoints as the undo quota left are retained, as older ones can never be reverted to.
      */
     public void checkpoint() {
-        this.history.push(this.currentTransition);
-        this.currentTransition = new Transition();
-    }
-
-    /**
-     * Apply transition on current entity map.
-     * History is not touched in this method.
-     * Callers should maintain history themselves.
-     *
-     * @param transition the transition to apply.
-     */
-    private void applyTransition(Transition transition) {
-        transition.moves.entrySet().stream()
-                .map(e -> {
-                    final var entity = this.entities.remove(e.getKey());
-                    this.entities.put(e.getKey(), new Empty());
-                    return Map.entry(e.getValue(), entity);
-                })
-                .toList()
-                .forEach(e -> this.entities.put(e.getKey(), e.getValue()));
+        this.history.checkpoint();
     }
 
     /**
@@ -200,16 +350,37 @@ public class GameState {
      * revert to the initial game state.
      */
     public void undo() {
-        final var undoTransition = this.currentTransition.reverse();
-        this.currentTransition = new Transition();
-        this.applyTransition(undoTransition);
-        if (!this.history.empty()) {
-            final var historyTransaction = this.history.pop().reverse();
-            this.applyTransition(historyTransaction);
+        this.history.revertPending(this.board);
+        if (this.history.hasCheckpoint()) {
+            this.history.revertCheckpoint(this.board);
             this.undoQuota--;
+            this.history.retain(this.undoQuota);
         }
     }
 
+    /**
+     * Keep the undo history of a game with unlimited undo partly on disk.
+     * Once more than the given number of moves are recorded in memory, the oldest checkpoints are written to a
+     * temporary file in the given directory and read back when they are undone.
+     * <p>
+     * Games with an undo limit only keep the checkpoints that can still be undone, so this has no effect on them.
+     *
+     * @param directory     the directory to create the temporary file in.
+     * @param movesInMemory the maximum number of moves to keep in memory.
+     * @throws IllegalStateException if the history is already spilled to disk.
+     */
+    public void spillHistoryTo(@NotNull Path directory, int movesInMemory) {
+        this.history.spillTo(directory, movesInMemory);
+    }
+
+    /**
+     * Release the temporary file holding the undo history spilled to disk (see {@link #spillHistoryTo(Path, int)}),
+     * e.g., when the game ends. The checkpoints in the file can no longer be undone afterwards.
+     */
+    public void close() {
+        this.history.close();
+    }
+
     /**
      * Get the maximum width of the game map.
      * This should be the same as that in {@link GameMap} class.
@@ -217,7 +388,7 @@ public class GameState {
      * @return maximum width.
      */
     public int getMapMaxWidth() {
-        return boardWidth;
+        return board.width;
     }
 
     /**
@@ -227,55 +398,21 @@ public class GameState {
      * @return maximum height.
      */
     public int getMapMaxHeight() {
-        return boardHeight;
-    }
-
-    private static class Transition {
-        private final Map<Position, Position> moves;
-
-        private void add(Position from, Position to) {
-            final var key = this.moves.entrySet().stream()
-                    .filter(e -> e.getValue().equals(from))
-                    .map(Map.Entry::getKey)
-                    .findFirst().orElse(from);
-            this.moves.put(key, to);
-        }
-
-        private Transition(Map<Position, Position> moves) {
-            this.moves = moves;
-        }
-
-        private Transition() {
-            this.moves = new HashMap<>();
-        }
-
-        private Transition reverse() {
-            final var moves = this.moves.entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
-            return new Transition(moves);
-        }
-
-        @Override
-        public String toString() {
-            final var moves = this.moves.entrySet().stream()
-                    .map(e -> String.format("(%d,%d)->(%d,%d)", e.getKey().x(), e.getKey().y(), e.getValue().x(), e.getValue().y()))
-                    .toList();
-            return String.join(",", moves);
-        }
+        return board.height;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof GameState gameState)) return false;
-        return boardWidth == gameState.boardWidth &&
-                boardHeight == gameState.boardHeight &&
+        return stateHash() == gameState.stateHash() &&
                 undoQuota == gameState.undoQuota &&
-                entities.equals(gameState.entities) &&
+                board.equals(gameState.board) &&
                 destinations.equals(gameState.destinations);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(entities, boardWidth, boardHeight, destinations, undoQuota);
+        return Long.hashCode(stateHash()) * 31 + undoQuota;
     }
 }
@@ -17,4 +17,28 @@ public interface InputEngine {
      */
     @NotNull
     Action fetchAction();
+
+    /**
+     * Fetches up to {@code max} unprocessed actions that are already available, without blocking.
+     * The actions are stored in the order they would be returned by {@link #fetchAction()}, and a batch ends at the
+     * first {@link hk.ust.comp3021.actions.Exit} action.
+     * <p>
+     * By default, no action is considered available, so callers fall back to {@link #fetchAction()}.
+     *
+     * @param buffer The array to store the actions into, starting from index 0.
+     * @param max    The maximum number of actions to fetch, which is at most the length of the buffer.
+     * @return the number of actions fetched, or 0 if no action is available yet.
+     */
+    default int fetchActions(@NotNull Action[] buffer, int max) {
+        return 0;
+    }
+
+    /**
+     * Releases the resources held by this engine, e.g., threads reading ahead, once no more action will be fetched
+     * from it, even if its last {@link hk.ust.comp3021.actions.Exit} action has not been fetched.
+     * <p>
+     * By default, nothing is held, so nothing is released.
+     */
+    default void close() {
+    }
 }
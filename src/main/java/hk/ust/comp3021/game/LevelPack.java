@@ -0,0 +1,198 @@
+package hk.ust.comp3021.game;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A level pack, i.e., a single file holding many game maps that can be accessed by their index.
+ * <p>
+ * The file is memory-mapped when the pack is opened, and each level is only parsed when it is first accessed.
+ * Parsed levels are kept in a least-recently-used cache of a fixed capacity, and are never modified, so they can be
+ * shared by any number of {@link GameState}s.
+ * <p>
+ * All numbers are big-endian. The layout of a level pack is:
+ * <li>Magic number {@code "SPAK"} (4 bytes), format version (2 bytes) and 2 reserved bytes.</li>
+ * <li>The number of levels (4 bytes).</li>
+ * <li>The index block, holding the offset from the start of the file (8 bytes) and the length (4 bytes) of each
+ * level.</li>
+ * <li>The levels, each either in the text format of {@link GameMap#parse(String)} or in the compiled format of
+ * {@link BinaryGameMap}.</li>
+ * <p>
+ * This class is thread-safe.
+ */
+public final class LevelPack {
+
+    /**
+     * The magic number at the start of every level pack, {@code "SPAK"} in ASCII.
+     */
+    public static final int MAGIC = 0x5350414B;
+
+    /**
+     * The default number of parsed levels kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 256;
+
+    private static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final int INDEX_ENTRY_SIZE = 12;
+
+    private final ByteBuffer buffer;
+
+    private final int size;
+
+    private final Map<Integer, GameMap> cache;
+
+    private LevelPack(@NotNull ByteBuffer buffer, int cacheCapacity) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("not a level pack");
+        if (buffer.getShort(4) != VERSION)
+            throw new IllegalArgumentException("unsupported level pack version: " + buffer.getShort(4));
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        if (size < 0 || HEADER_SIZE + (long) size * INDEX_ENTRY_SIZE > buffer.limit())
+            throw new IllegalArgumentException("truncated level pack index");
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, GameMap> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    /**
+     * Open a level pack with the default cache capacity.
+     *
+     * @param file The level pack file.
+     * @return The opened level pack.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a level pack.
+     */
+    public static @NotNull LevelPack open(@NotNull Path file) throws IOException {
+        return open(file, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * Open a level pack.
+     *
+     * @param file          The level pack file, which must be smaller than 2 GiB.
+     * @param cacheCapacity The maximum number of parsed levels to keep.
+     * @return The opened level pack.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a level pack.
+     */
+    public static @NotNull LevelPack open(@NotNull Path file, int cacheCapacity) throws IOException {
+        if (cacheCapacity < 0)
+            throw new IllegalArgumentException("invalid cache capacity");
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("level pack too large");
+            return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), cacheCapacity);
+        }
+    }
+
+    /**
+     * Check whether a file starts with the magic number of level packs.
+     *
+     * @param file The file to check.
+     * @return Whether the file is a level pack.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isLevelPack(@NotNull Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0)
+                    return false;
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Write a level pack holding the given map files, in the given order.
+     * The map files are stored as they are, so they can be text or compiled maps, and are only validated when they
+     * are accessed in the pack.
+     *
+     * @param file     The level pack file to write, which is replaced if it exists.
+     * @param mapFiles The map files.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void write(@NotNull Path file, @NotNull List<Path> mapFiles) throws IOException {
+        final var index = ByteBuffer.allocate(HEADER_SIZE + mapFiles.size() * INDEX_ENTRY_SIZE);
+        index.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(mapFiles.size());
+        try (final var channel = FileChannel.open(file,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = index.capacity();
+            channel.position(offset);
+            for (final var mapFile : mapFiles) {
+                final var level = ByteBuffer.wrap(Files.readAllBytes(mapFile));
+                index.putLong(offset).putInt(level.remaining());
+                offset += level.remaining();
+                while (level.hasRemaining()) {
+                    channel.write(level);
+                }
+            }
+            index.flip();
+            channel.position(0);
+            while (index.hasRemaining()) {
+                channel.write(index);
+            }
+        }
+    }
+
+    /**
+     * @return The number of levels in the pack.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a level, parsing it if it is not in the cache.
+     *
+     * @param level The index of the level, starting from 0.
+     * @return The game map of the level.
+     * @throws IndexOutOfBoundsException if there is no such level.
+     * @throws IllegalArgumentException  if the level is not a valid map.
+     */
+    public @NotNull GameMap getLevel(int level) {
+        Objects.checkIndex(level, size);
+        synchronized (cache) {
+            final var cached = cache.get(level);
+            if (cached != null)
+                return cached;
+        }
+        // Racing threads may both parse the level, which is harmless as parsed maps are never modified.
+        final var gameMap = parse(level);
+        synchronized (cache) {
+            cache.put(level, gameMap);
+        }
+        return gameMap;
+    }
+
+    private @NotNull GameMap parse(int level) {
+        final var entry = HEADER_SIZE + level * INDEX_ENTRY_SIZE;
+        final var offset = buffer.getLong(entry);
+        final var length = buffer.getInt(entry + Long.BYTES);
+        if (offset < 0 || length < 0 || offset + length > buffer.limit())
+            throw new IllegalArgumentException("level " + level + " is outside the level pack");
+        final var bytes = buffer.slice((int) offset, length);
+        if (length >= Integer.BYTES && bytes.getInt(0) == BinaryGameMap.MAGIC)
+            return BinaryGameMap.read(bytes);
+        return GameMap.parse(bytes);
+    }
+}
@@ -0,0 +1,164 @@
+package hk.ust.comp3021.game;
+
+import hk.ust.comp3021.actions.Move;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Static analyses of a map, which only depend on the cells that never change: walls, floors and destinations.
+ * <p>
+ * One instance is shared by a board and all its forks, so each analysis is computed at most once per map, on first
+ * use, and then read by every {@link GameState} of the map.
+ * Racing threads may compute the same analysis twice, which is harmless as the results are equal.
+ * <p>
+ * Push distances are the minimum numbers of pushes needed to bring a box from a cell onto a destination, ignoring all
+ * other entities. They are computed by a breadth-first search of pulls starting from the destination, as a box can be
+ * pushed from a cell onto a destination exactly if it can be pulled from the destination to the cell.
+ * Distances are stored as {@code short}s, {@link #UNREACHABLE} for cells a box can never be pushed from, and saturate
+ * at {@link Short#MAX_VALUE}.
+ */
+final class MapAnalysis {
+
+    /**
+     * The push distance of cells from which a box can never reach the destination.
+     */
+    static final short UNREACHABLE = -1;
+
+    /**
+     * The push distances to the nearest destination.
+     */
+    private volatile short[] minPushDistances;
+
+    private volatile long[] deadSquares;
+
+    /**
+     * The destination cells in ascending order, and the push distances to each of them, computed on first use.
+     */
+    private volatile PushTables pushTables;
+
+    private record PushTables(int @NotNull [] destinations, @NotNull AtomicReferenceArray<short[]> distances) {
+    }
+
+    /**
+     * Get the dead squares of the map, i.e., the floor cells from which a box can never be pushed onto any
+     * destination, even if there are no other boxes in the way.
+     * These are the floor cells no pull from any destination reaches, which covers corners and cells along walls
+     * without destinations.
+     * As destinations are shared by all players, the dead squares are the same for the boxes of every player.
+     *
+     * @param board A board of the map.
+     * @return The dead squares as a {@link Bitboard}, which must not be modified.
+     */
+    long @NotNull [] deadSquares(@NotNull Board board) {
+        var dead = deadSquares;
+        if (dead == null) {
+            final var distances = minPushDistances(board);
+            dead = Bitboard.create(board.width, board.height);
+            for (int cell = 0; cell < distances.length; cell++) {
+                if (distances[cell] == UNREACHABLE && isFloor(board, cell))
+                    Bitboard.set(dead, cell);
+            }
+            deadSquares = dead;
+        }
+        return dead;
+    }
+
+    /**
+     * @param board A board of the map.
+     * @return The push distances from every cell to the nearest destination, which must not be modified.
+     */
+    short @NotNull [] minPushDistances(@NotNull Board board) {
+        var distances = minPushDistances;
+        if (distances == null) {
+            final var destinations = pushTables(board).destinations();
+            distances = pullDistances(board, destinations);
+            minPushDistances = distances;
+        }
+        return distances;
+    }
+
+    /**
+     * @param board       A board of the map.
+     * @param destination The index of a destination cell.
+     * @return The push distances from every cell to the destination, which must not be modified, or null if the cell
+     * is not a destination.
+     */
+    short @Nullable [] pushDistances(@NotNull Board board, int destination) {
+        final var tables = pushTables(board);
+        final var slot = Arrays.binarySearch(tables.destinations(), destination);
+        if (slot < 0)
+            return null;
+        var distances = tables.distances().get(slot);
+        if (distances == null) {
+            distances = pullDistances(board, destination);
+            if (!tables.distances().compareAndSet(slot, null, distances))
+                distances = tables.distances().get(slot);
+        }
+        return distances;
+    }
+
+    private @NotNull PushTables pushTables(@NotNull Board board) {
+        var tables = pushTables;
+        if (tables == null) {
+            var count = 0;
+            final var destinations = new int[board.cells.length];
+            for (int cell = 0; cell < board.cells.length; cell++) {
+                if (board.isDestination(cell) && isFloor(board, cell))
+                    destinations[count++] = cell;
+            }
+            tables = new PushTables(Arrays.copyOf(destinations, count), new AtomicReferenceArray<>(count));
+            pushTables = tables;
+        }
+        return tables;
+    }
+
+    /**
+     * Search the pulls starting from the given destinations.
+     *
+     * @param board   A board of the map.
+     * @param sources The indexes of the destination cells, which must be floors.
+     * @return The push distances from every cell to the nearest of the destinations.
+     */
+    private static short @NotNull [] pullDistances(@NotNull Board board, int @NotNull ... sources) {
+        final var distances = new short[board.cells.length];
+        Arrays.fill(distances, UNREACHABLE);
+        final var queue = new int[board.cells.length];
+        var head = 0;
+        var tail = 0;
+        for (final var source : sources) {
+            distances[source] = 0;
+            queue[tail++] = source;
+        }
+        while (head < tail) {
+            final var box = queue[head++];
+            final var x = box % board.width;
+            final var y = box / board.width;
+            final var distance = (short) Math.min(distances[box] + 1, Short.MAX_VALUE);
+            for (int direction = Move.DOWN; direction <= Move.UP; direction++) {
+                // pulling the box one cell in the direction, with the player walking ahead of it
+                final var dx = Move.dx(direction);
+                final var dy = Move.dy(direction);
+                final var pulled = board.indexOf(x + dx, y + dy);
+                final var player = board.indexOf(x + 2 * dx, y + 2 * dy);
+                if (isFloor(board, pulled) && isFloor(board, player) && distances[pulled] == UNREACHABLE) {
+                    distances[pulled] = distance;
+                    queue[tail++] = pulled;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * @param board A board of the map.
+     * @param cell  The index of the cell, or -1.
+     * @return Whether the cell is inside the map and not a wall, i.e., whether entities can ever be there.
+     */
+    static boolean isFloor(@NotNull Board board, int cell) {
+        final var code = board.get(cell);
+        return code != Board.ABSENT && code != Board.WALL;
+    }
+}
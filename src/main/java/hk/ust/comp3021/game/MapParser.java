@@ -0,0 +1,284 @@
+package hk.ust.comp3021.game;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * A single-pass parser turning the bytes of a map file into a {@link GameMap}.
+ * <p>
+ * Bytes are fed in chunks of any size, and each byte is looked up in a table of cell codes and appended to a growing
+ * array, so that neither strings nor entities are created for the cells. Once all bytes have been fed,
+ * {@link #finish()} copies the rows into a {@link Board} and validates it.
+ * <p>
+ * Only ASCII characters have a meaning in map files. Other characters are treated as absent cells and count as a
+ * single column, as in {@link GameMap#parse(String)}.
+ * Errors are reported with the line and column they were detected at, both starting from 1.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class MapParser {
+
+    /**
+     * The size of the chunks read from input streams.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The longest first line that is still parsed as an undo limit.
+     */
+    private static final int MAX_HEADER_LENGTH = 32;
+
+    /**
+     * Cell codes of the ASCII characters, {@link Board#ABSENT} for characters without meaning.
+     */
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        CODES['#'] = Board.WALL;
+        CODES['@'] = Board.EMPTY;
+        CODES['.'] = Board.EMPTY;
+        for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+            CODES['A' + id] = (byte) (Board.PLAYER | id);
+            CODES['a' + id] = (byte) (Board.BOX | id);
+        }
+    }
+
+    private final StringBuilder header = new StringBuilder();
+
+    private int undoLimit = 0;
+
+    private boolean inHeader = true;
+
+    private boolean empty = true;
+
+    private boolean afterCarriageReturn = false;
+
+    /**
+     * The cell codes of all lines after the first one, concatenated.
+     */
+    private byte[] codes = new byte[256];
+
+    private int length = 0;
+
+    /**
+     * The offset in {@link #codes} at which each row starts.
+     */
+    private int[] rowStarts = new int[16];
+
+    private int rows = 0;
+
+    private int x = 0;
+
+    private int maxX = -1;
+
+    private int maxY = -1;
+
+    /**
+     * Interleaved coordinates of the destinations.
+     */
+    private int[] destinations = new int[16];
+
+    private int destinationCount = 0;
+
+    /**
+     * Bit i is set if the player i is on the map.
+     */
+    private int players = 0;
+
+    /**
+     * Parse a map from a buffer.
+     *
+     * @param buffer The bytes of the map, from the position to the limit of the buffer. The position is not changed.
+     * @return The parsed game map.
+     * @throws IllegalArgumentException if the map is invalid.
+     */
+    static @NotNull GameMap parse(@NotNull ByteBuffer buffer) {
+        final var parser = new MapParser();
+        if (buffer.hasArray()) {
+            parser.feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                parser.feed(buffer.get(i));
+            }
+        }
+        return parser.finish();
+    }
+
+    /**
+     * Parse a map from a stream, which is read until its end but not closed.
+     *
+     * @param stream The stream to read the map from.
+     * @return The parsed game map.
+     * @throws IOException              if the stream cannot be read.
+     * @throws IllegalArgumentException if the map is invalid.
+     */
+    static @NotNull GameMap parse(@NotNull InputStream stream) throws IOException {
+        final var parser = new MapParser();
+        final var chunk = new byte[CHUNK_SIZE];
+        int read;
+        while ((read = stream.read(chunk)) >= 0) {
+            parser.feed(chunk, 0, read);
+        }
+        return parser.finish();
+    }
+
+    /**
+     * Feed a chunk of bytes to the parser.
+     *
+     * @param bytes  The array holding the chunk.
+     * @param offset The offset of the chunk in the array.
+     * @param count  The number of bytes in the chunk.
+     * @throws IllegalArgumentException if the map is invalid.
+     */
+    void feed(byte @NotNull [] bytes, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            feed(bytes[i]);
+        }
+    }
+
+    /**
+     * Feed one byte to the parser.
+     *
+     * @param b The byte.
+     * @throws IllegalArgumentException if the map is invalid.
+     */
+    void feed(byte b) {
+        empty = false;
+        if (b == '\n' && afterCarriageReturn) {
+            afterCarriageReturn = false;
+            return;
+        }
+        afterCarriageReturn = b == '\r';
+        if (b == '\n' || b == '\r') {
+            endLine();
+        } else if (inHeader) {
+            if (header.length() <= MAX_HEADER_LENGTH)
+                header.append((char) (b & 0xFF));
+        } else if ((b & 0xC0) != 0x80) { // UTF-8 continuation bytes do not start a new column
+            appendCell(b);
+        }
+    }
+
+    /**
+     * Finish parsing and build the map.
+     *
+     * @return The parsed game map.
+     * @throws IllegalArgumentException if the map is invalid.
+     */
+    @NotNull GameMap finish() {
+        if (empty)
+            throw new IllegalArgumentException("Invalid map file.");
+        if (inHeader)
+            endLine();
+
+        final var width = Math.max(maxX, 0) + 1;
+        final var height = Math.max(maxY, 0) + 1;
+        final var destinationSet = new HashSet<Position>();
+        for (int i = 0; i < destinationCount; i++) {
+            destinationSet.add(Position.of(destinations[2 * i], destinations[2 * i + 1]));
+        }
+        final var board = new Board(width, height, destinationSet);
+        for (int y = 0; y < Math.min(rows, height); y++) {
+            final var rowLength = (y + 1 < rows ? rowStarts[y + 1] : length) - rowStarts[y];
+            System.arraycopy(codes, rowStarts[y], board.cells, y * width, Math.min(rowLength, width));
+        }
+        board.reindex();
+
+        validate(board, destinationSet.size(), undoLimit);
+        return new GameMap(board, destinationSet, undoLimit);
+    }
+
+    /**
+     * Validate a map, except for duplicate players, which a board cannot hold.
+     *
+     * @param board            The board holding the initial entities of the map.
+     * @param destinationCount The number of destinations of the map.
+     * @param undoLimit        The undo limit of the map.
+     * @throws IllegalArgumentException if the map is not closed, if the undo limit is invalid, if there is no player,
+     *                                  if the numbers of boxes and destinations differ,
+     *                                  or if the players and the owners of the boxes differ.
+     */
+    static void validate(@NotNull Board board, int destinationCount, int undoLimit) {
+        BoundaryValidator.validate(board);
+        if (undoLimit < -1)
+            throw new IllegalArgumentException("invalid undo limit");
+        var players = 0;
+        var referencedPlayers = 0;
+        var boxCount = 0;
+        for (int id = 0; id < Board.MAX_PLAYERS; id++) {
+            if (board.playerCell(id) >= 0)
+                players |= 1 << id;
+            if (board.boxCount(id) > 0)
+                referencedPlayers |= 1 << id;
+            boxCount += board.boxCount(id);
+        }
+        if (players == 0)
+            throw new IllegalArgumentException("no player");
+        if (destinationCount != boxCount)
+            throw new IllegalArgumentException("mismatch destinations");
+        if (referencedPlayers != players)
+            throw new IllegalArgumentException("unmatched players");
+    }
+
+    private void endLine() {
+        if (inHeader) {
+            try {
+                undoLimit = Integer.parseInt(header.toString());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Failed to parse undo limit at line 1.", e);
+            }
+            inHeader = false;
+        }
+        startRow();
+    }
+
+    private void startRow() {
+        if (rows == rowStarts.length)
+            rowStarts = Arrays.copyOf(rowStarts, rows * 2);
+        rowStarts[rows++] = length;
+        x = 0;
+    }
+
+    private void appendCell(byte b) {
+        final var code = b >= 0 ? CODES[b] : Board.ABSENT;
+        if (length == codes.length)
+            codes = Arrays.copyOf(codes, (int) Math.min(codes.length * 2L, Integer.MAX_VALUE - 8));
+        codes[length++] = code;
+        if (code != Board.ABSENT) {
+            final var y = rows - 1;
+            maxX = Math.max(maxX, x);
+            maxY = y;
+            if (Board.isPlayer(code)) {
+                final var bit = 1 << Board.idOf(code);
+                if ((players & bit) != 0)
+                    throw new IllegalArgumentException("duplicate players detected in the map at " + location(x, y));
+                players |= bit;
+            } else if (b == '@') {
+                addDestination(x, y);
+            }
+        }
+        x++;
+    }
+
+    private void addDestination(int x, int y) {
+        if (2 * destinationCount == destinations.length)
+            destinations = Arrays.copyOf(destinations, destinations.length * 2);
+        destinations[2 * destinationCount] = x;
+        destinations[2 * destinationCount + 1] = y;
+        destinationCount++;
+    }
+
+    /**
+     * @param x The horizontal displacement of a cell.
+     * @param y The vertical displacement of a cell.
+     * @return The line and column of the cell in the map file.
+     */
+    private static @NotNull String location(int x, int y) {
+        return "line " + (y + 2) + ", column " + (x + 1);
+    }
+}
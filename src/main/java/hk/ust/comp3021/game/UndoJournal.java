@@ -0,0 +1,329 @@
+package hk.ust.comp3021.game;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The move history of a {@link GameState}, used to revert the game to previous checkpoints.
+ * <p>
+ * Moves are stored as pairs of cell indexes packed into an int ring buffer, and checkpoints are stored as offsets
+ * into that buffer. Recording a move or a checkpoint does not allocate once the buffers have grown large enough, and
+ * reverting to a checkpoint only visits the moves recorded since then.
+ * <p>
+ * A move continuing the previous move after the last checkpoint is merged into it, i.e., moves A to B and B to C are
+ * recorded as A to C, and a move returning the entity to where it started cancels out.
+ * An entity walking around between checkpoints therefore does not grow the journal.
+ * <p>
+ * The journal only retains as many checkpoints as can still be undone (see {@link #retain(int)}).
+ * Older checkpoints are evicted together with their moves.
+ * When the number of checkpoints is unlimited, old checkpoints can optionally be spilled to a file instead of being
+ * kept in memory (see {@link #spillTo(Path, int)}).
+ * <p>
+ * Offsets are logical and only ever grow; they are mapped into the ring buffers by masking with the buffer size.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class UndoJournal {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Interleaved source and target cell indexes of the recorded moves.
+     * The length is always a power of two.
+     */
+    private int[] moves = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * The logical offset of the oldest retained move.
+     */
+    private long head = 0;
+
+    /**
+     * The logical offset after the newest recorded move.
+     */
+    private long tail = 0;
+
+    /**
+     * The logical offsets in {@link #moves} at which each retained checkpoint was recorded.
+     * The length is always a power of two.
+     */
+    private long[] checkpoints = new long[INITIAL_CAPACITY];
+
+    private long firstCheckpoint = 0;
+
+    private long lastCheckpoint = 0;
+
+    /**
+     * The maximum number of checkpoints to retain, or -1 if unlimited.
+     */
+    private int limit = -1;
+
+    @Nullable
+    private Spill spill;
+
+    /**
+     * Record a move from one cell to another.
+     *
+     * @param from The index of the source cell.
+     * @param to   The index of the target cell.
+     */
+    void record(int from, int to) {
+        if (tail > pendingStart() && moves[(int) (tail - 1) & (moves.length - 1)] == from) {
+            if (moves[(int) (tail - 2) & (moves.length - 1)] == to) {
+                tail -= 2;
+            } else {
+                moves[(int) (tail - 1) & (moves.length - 1)] = to;
+            }
+            return;
+        }
+        if (tail - head == moves.length)
+            moves = grow(moves, head, tail);
+        moves[(int) tail & (moves.length - 1)] = from;
+        moves[(int) (tail + 1) & (moves.length - 1)] = to;
+        tail += 2;
+    }
+
+    /**
+     * Record a checkpoint after the last recorded move.
+     * Checkpoints exceeding the retention limit are evicted, oldest first.
+     */
+    void checkpoint() {
+        if (lastCheckpoint - firstCheckpoint == checkpoints.length)
+            checkpoints = grow(checkpoints, firstCheckpoint, lastCheckpoint);
+        checkpoints[(int) lastCheckpoint & (checkpoints.length - 1)] = tail;
+        lastCheckpoint++;
+        evict();
+        if (spill != null)
+            spill.offload();
+    }
+
+    /**
+     * Limit the number of retained checkpoints.
+     * Checkpoints exceeding the new limit are evicted immediately, oldest first.
+     *
+     * @param checkpointLimit The maximum number of checkpoints to retain. Negative numbers mean unlimited.
+     */
+    void retain(int checkpointLimit) {
+        this.limit = Math.max(checkpointLimit, -1);
+        evict();
+    }
+
+    /**
+     * Spill checkpoints to a temporary file once the number of moves kept in memory exceeds the given threshold.
+     * Spilled checkpoints are read back when they are undone.
+     * This only takes effect while the number of retained checkpoints is unlimited.
+     *
+     * @param directory     The directory to create the temporary file in.
+     * @param movesInMemory The maximum number of moves to keep in memory.
+     * @throws IllegalStateException if spilling has already been enabled.
+     */
+    void spillTo(@NotNull Path directory, int movesInMemory) {
+        if (movesInMemory < 0)
+            throw new IllegalArgumentException("invalid number of moves in memory");
+        if (spill != null)
+            throw new IllegalStateException("history spill already enabled");
+        this.spill = new Spill(directory, movesInMemory * 2L);
+    }
+
+    /**
+     * Close the temporary file holding the spilled checkpoints, if any, which deletes it.
+     * The spilled checkpoints are forgotten, while the journal can still be used.
+     */
+    void close() {
+        if (spill != null)
+            spill.close();
+    }
+
+    /**
+     * @return Whether there is any checkpoint to revert to.
+     */
+    boolean hasCheckpoint() {
+        return lastCheckpoint > firstCheckpoint || (spill != null && spill.count > 0);
+    }
+
+    /**
+     * Revert and forget the moves recorded after the last checkpoint.
+     *
+     * @param board The board to revert the moves on.
+     */
+    void revertPending(@NotNull Board board) {
+        revert(board, pendingStart());
+    }
+
+    /**
+     * Revert and forget the moves between the last two checkpoints, and remove the last checkpoint.
+     * The moves recorded after the last checkpoint must have been reverted by {@link #revertPending(Board)}.
+     *
+     * @param board The board to revert the moves on.
+     */
+    void revertCheckpoint(@NotNull Board board) {
+        if (lastCheckpoint > firstCheckpoint) {
+            lastCheckpoint--;
+            revert(board, lastCheckpoint > firstCheckpoint ? checkpointAt(lastCheckpoint - 1) : head);
+        } else if (spill != null) {
+            spill.revertLast(board);
+        }
+    }
+
+    private long pendingStart() {
+        return lastCheckpoint > firstCheckpoint ? checkpointAt(lastCheckpoint - 1) : head;
+    }
+
+    private long checkpointAt(long index) {
+        return checkpoints[(int) index & (checkpoints.length - 1)];
+    }
+
+    private void revert(@NotNull Board board, long until) {
+        final var mask = moves.length - 1;
+        while (tail > until) {
+            final var to = moves[(int) --tail & mask];
+            final var from = moves[(int) --tail & mask];
+            board.move(to, from);
+        }
+    }
+
+    private void evict() {
+        if (limit < 0)
+            return;
+        while (lastCheckpoint - firstCheckpoint > limit) {
+            head = checkpointAt(firstCheckpoint++);
+        }
+    }
+
+    private static int[] grow(int[] buffer, long from, long until) {
+        final var grown = new int[buffer.length * 2];
+        for (var i = from; i < until; i++) {
+            grown[(int) i & (grown.length - 1)] = buffer[(int) i & (buffer.length - 1)];
+        }
+        return grown;
+    }
+
+    private static long[] grow(long[] buffer, long from, long until) {
+        final var grown = new long[buffer.length * 2];
+        for (var i = from; i < until; i++) {
+            grown[(int) i & (grown.length - 1)] = buffer[(int) i & (buffer.length - 1)];
+        }
+        return grown;
+    }
+
+    /**
+     * A stack of checkpoints stored in a temporary file.
+     * Each checkpoint is stored as its moves followed by the number of ints they occupy,
+     * so that the last checkpoint can be read back and truncated without an index.
+     */
+    private final class Spill {
+
+        private final Path directory;
+
+        private final long threshold;
+
+        @Nullable
+        private FileChannel channel;
+
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+        private long count = 0;
+
+        private Spill(@NotNull Path directory, long threshold) {
+            this.directory = directory;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Move the oldest checkpoints to the file while there are more moves in memory than the threshold.
+         */
+        private void offload() {
+            if (limit >= 0)
+                return;
+            while (tail - head > threshold && lastCheckpoint > firstCheckpoint) {
+                final var until = checkpointAt(firstCheckpoint++);
+                final var length = (int) (until - head);
+                final var bytes = ensureBuffer((length + 1) * Integer.BYTES);
+                for (var i = head; i < until; i++) {
+                    bytes.putInt(moves[(int) i & (moves.length - 1)]);
+                }
+                bytes.putInt(length).flip();
+                try {
+                    final var file = open();
+                    file.position(file.size());
+                    while (bytes.hasRemaining()) {
+                        file.write(bytes);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to spill undo history.", e);
+                }
+                head = until;
+                count++;
+            }
+        }
+
+        /**
+         * Revert the moves of the last spilled checkpoint and remove it from the file.
+         *
+         * @param board The board to revert the moves on.
+         */
+        private void revertLast(@NotNull Board board) {
+            try {
+                final var file = open();
+                final var end = file.size();
+                final var length = read(file, end - Integer.BYTES, Integer.BYTES).getInt();
+                final var start = end - (long) (length + 1) * Integer.BYTES;
+                final var bytes = read(file, start, length * Integer.BYTES);
+                for (int i = length - 2; i >= 0; i -= 2) {
+                    board.move(bytes.getInt((i + 1) * Integer.BYTES), bytes.getInt(i * Integer.BYTES));
+                }
+                file.truncate(start);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read spilled undo history.", e);
+            }
+            if (--count == 0)
+                close();
+        }
+
+        private ByteBuffer read(@NotNull FileChannel file, long position, int length) throws IOException {
+            final var bytes = ensureBuffer(length);
+            bytes.limit(length);
+            while (bytes.hasRemaining()) {
+                if (file.read(bytes, position + bytes.position()) < 0)
+                    throw new IOException("Truncated undo history.");
+            }
+            return bytes.flip();
+        }
+
+        private ByteBuffer ensureBuffer(int length) {
+            if (buffer.capacity() < length)
+                buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            return buffer.clear();
+        }
+
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                final var file = Files.createTempFile(directory, "sokoban-history", ".bin");
+                channel = FileChannel.open(file,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            return channel;
+        }
+
+        private void close() {
+            if (channel == null)
+                return;
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads an action file byte by byte, without decoding it into strings.
+ * <p>
+ * The first line of an action file is the id of the player, and each following line denotes an action by its first
+ * character (see {@link StreamInputEngine#char2Action(int, char)}), optionally followed by a number repeating the action,
+ * e.g., {@code L12}. Lines not starting with an action character, including empty lines, and lines repeating an action
+ * 0 times are skipped.
+ * A repeated move is read as a single move with that many steps (see {@link #steps()}), while a repeated
+ * {@link Undo} is read as that many actions and the number after {@link Exit} is ignored.
+ * Actions are read as codes: the directions of {@link Move} for moves, {@link #UNDO}, {@link #EXIT}, and {@link #END}
+ * at the end of the file. Reading a code is a lookup in a table of all 256 byte values, and throws no exception.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class ActionReader {
+
+    /**
+     * The size of the buffer used to read from channels.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The code of {@link Undo}.
+     */
+    static final int UNDO = 4;
+
+    /**
+     * The code of {@link Exit}.
+     */
+    static final int EXIT = 5;
+
+    /**
+     * The code returned at the end of the file.
+     */
+    static final int END = -1;
+
+    /**
+     * The code returned by {@link #nextBuffered()} if the next action is not completely buffered yet.
+     */
+    static final int NONE = -2;
+
+    /**
+     * The largest player id whose actions are shared.
+     */
+    static final int MAX_CACHED_ID = 25;
+
+    private static final byte INVALID = -1;
+
+    /**
+     * The number of action codes, i.e., the directions of {@link Move}, {@link #UNDO} and {@link #EXIT}.
+     */
+    private static final int CODE_COUNT = 6;
+
+    /**
+     * The shared actions of each player id up to {@link #MAX_CACHED_ID}, indexed by action code.
+     */
+    private static final Action[][] ACTIONS = new Action[MAX_CACHED_ID + 1][CODE_COUNT];
+
+    /**
+     * The action codes of all bytes, {@link #INVALID} for bytes not denoting an action.
+     */
+    private static final byte[] CODES = new byte[256];
+
+    static {
+        Arrays.fill(CODES, INVALID);
+        setCode("Hh", Move.LEFT);
+        setCode("Jj", Move.DOWN);
+        setCode("Kk", Move.UP);
+        setCode("Ll", Move.RIGHT);
+        setCode("Uu", UNDO);
+        setCode("Ee", EXIT);
+        for (int id = 0; id <= MAX_CACHED_ID; id++) {
+            for (int code = 0; code < CODE_COUNT; code++) {
+                ACTIONS[id][code] = createAction(id, code, 1);
+            }
+        }
+    }
+
+    private static void setCode(@NotNull String characters, int code) {
+        for (int i = 0; i < characters.length(); i++) {
+            CODES[characters.charAt(i)] = (byte) code;
+        }
+    }
+
+    /**
+     * The channel to refill the buffer from, or null if the buffer holds the whole file.
+     */
+    private final @Nullable ReadableByteChannel channel;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of steps of the last action read.
+     */
+    private int steps = 1;
+
+    /**
+     * The number of times the last action read is still to be repeated.
+     */
+    private int repeats = 0;
+
+    /**
+     * Whether the buffer must not be refilled, while reading by {@link #nextBuffered()}.
+     */
+    private boolean bufferedOnly = false;
+
+    /**
+     * Whether the buffer was found to need refilling while reading by {@link #nextBuffered()}.
+     */
+    private boolean starved = false;
+
+    /**
+     * @param channel The channel to read the action file from, which is read in blocks of {@link #BUFFER_SIZE} bytes.
+     */
+    ActionReader(@NotNull ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+    }
+
+    /**
+     * @param buffer The buffer holding the whole action file from its position to its limit.
+     *               The reader takes over the position of the buffer.
+     */
+    ActionReader(@NotNull ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @param character A character.
+     * @return The action code of the character, or -1 if it does not denote an action.
+     */
+    static int codeOf(char character) {
+        return character < CODES.length ? CODES[character] : INVALID;
+    }
+
+    /**
+     * Get the action denoted by an action code.
+     * Actions are immutable, so the single-step actions of players with ids up to {@link #MAX_CACHED_ID} are shared
+     * instead of being created again.
+     *
+     * @param playerId The id of the player performing the action.
+     * @param code     The action code, other than {@link #END}.
+     * @param steps    The number of steps of moves, which is at least 1 and ignored for other actions.
+     * @return The action.
+     */
+    static @NotNull Action toAction(int playerId, int code, int steps) {
+        if (steps == 1 && playerId >= 0 && playerId <= MAX_CACHED_ID && code >= 0 && code < CODE_COUNT)
+            return ACTIONS[playerId][code];
+        return createAction(playerId, code, steps);
+    }
+
+    private static @NotNull Action createAction(int playerId, int code, int steps) {
+        return switch (code) {
+            case Move.LEFT -> new Move.Left(playerId, steps);
+            case Move.DOWN -> new Move.Down(playerId, steps);
+            case Move.UP -> new Move.Up(playerId, steps);
+            case Move.RIGHT -> new Move.Right(playerId, steps);
+            case UNDO -> new Undo(playerId);
+            case EXIT -> new Exit(playerId);
+            default -> throw new IllegalArgumentException("invalid action code: " + code);
+        };
+    }
+
+    /**
+     * Read the first line of the action file.
+     *
+     * @return The id of the player.
+     * @throws NoSuchElementException if the file is empty.
+     * @throws NumberFormatException  if the first line is not a number.
+     */
+    int readPlayerId() {
+        var b = read();
+        if (b < 0)
+            throw new NoSuchElementException("No line found");
+        final var line = new StringBuilder();
+        while (b >= 0 && b != '\n' && b != '\r') {
+            line.append((char) b);
+            b = read();
+        }
+        return Integer.parseInt(line.toString());
+    }
+
+    /**
+     * Read the next action.
+     *
+     * @return The code of the action, or {@link #END} if there are no more actions.
+     */
+    int next() {
+        if (repeats > 0) {
+            repeats--;
+            return UNDO;
+        }
+        while (true) {
+            final var b = read();
+            if (b < 0)
+                return END;
+            if (b == '\n' || b == '\r')
+                continue;
+            final var code = CODES[b];
+            if (code == INVALID) {
+                skipLine();
+                continue;
+            }
+            final var count = readCount();
+            skipLine();
+            if (count == 0)
+                continue;
+            steps = code == UNDO || code == EXIT ? 1 : count;
+            repeats = code == UNDO ? count - 1 : 0;
+            return code;
+        }
+    }
+
+    /**
+     * Read the next action if it is already in the buffer, without reading from the channel, so without blocking.
+     * An action is only read once its whole line is buffered, as the number repeating it may follow.
+     *
+     * @return The code of the action, {@link #END} if there are no more actions, or {@link #NONE} if the channel has
+     * to be read for the next action, in which case nothing is consumed.
+     */
+    int nextBuffered() {
+        if (channel == null || repeats > 0)
+            return next();
+        final var position = buffer.position();
+        final var steps = this.steps;
+        bufferedOnly = true;
+        try {
+            final var code = next();
+            if (!starved)
+                return code;
+        } finally {
+            bufferedOnly = false;
+        }
+        starved = false;
+        buffer.position(position);
+        this.steps = steps;
+        this.repeats = 0;
+        return NONE;
+    }
+
+    /**
+     * @return The number of steps of the last action read, which is more than 1 only for repeated moves.
+     */
+    int steps() {
+        return steps;
+    }
+
+    /**
+     * Read the number directly following an action character, saturating at {@link Integer#MAX_VALUE}.
+     *
+     * @return The number, or 1 if there is none.
+     */
+    private int readCount() {
+        var count = 0;
+        var hasDigits = false;
+        while (buffer.hasRemaining() || fill()) {
+            final var digit = buffer.get(buffer.position()) - '0';
+            if (digit < 0 || digit > 9)
+                break;
+            buffer.get();
+            hasDigits = true;
+            count = count > (Integer.MAX_VALUE - digit) / 10 ? Integer.MAX_VALUE : count * 10 + digit;
+        }
+        return hasDigits ? count : 1;
+    }
+
+    private void skipLine() {
+        while (true) {
+            while (buffer.hasRemaining()) {
+                final var b = buffer.get();
+                if (b == '\n' || b == '\r')
+                    return;
+            }
+            if (!fill())
+                return;
+        }
+    }
+
+    /**
+     * @return The next byte as an unsigned value, or -1 at the end of the file.
+     */
+    private int read() {
+        if (!buffer.hasRemaining() && !fill())
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Refill the empty buffer from the channel.
+     *
+     * @return Whether any byte is read, i.e., whether the end of the file has not been reached.
+     * @throws UncheckedIOException if the channel cannot be read.
+     */
+    private boolean fill() {
+        if (channel == null)
+            return false;
+        if (bufferedOnly) {
+            starved = true;
+            return false;
+        }
+        buffer.clear();
+        try {
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            return read > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package hk.ust.comp3021.replay;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An input engine that fetches actions from a memory-mapped action file.
+ * <p>
+ * Actions are decoded straight from the mapping. The mapping is never modified, so one mapping (see
+ * {@link #map(Path)}) can be shared by any number of engines, e.g., the engines of all repeats of a game, each of which
+ * reads from its own view of the mapping.
+ */
+public class MappedInputEngine extends StreamInputEngine {
+
+    /**
+     * @param actions The mapped action file, which is shared and not modified.
+     */
+    public MappedInputEngine(@NotNull ByteBuffer actions) {
+        super(new ActionReader(actions.duplicate()));
+    }
+
+    /**
+     * Map an action file into memory.
+     * The file is closed once mapped, so the mapping does not hold a file descriptor.
+     *
+     * @param file The action file, which must be smaller than 2 GiB.
+     * @return The read-only mapping of the whole file.
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file is too large.
+     */
+    public static @NotNull ByteBuffer map(@NotNull Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("action file too large");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
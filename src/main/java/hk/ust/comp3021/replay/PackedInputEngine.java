@@ -0,0 +1,253 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.game.InputEngine;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An input engine that fetches actions from a packed action log, decoding them straight from a buffer, e.g., a
+ * memory-mapped file (see {@link MappedInputEngine#map(Path)}).
+ * <p>
+ * Packed action logs are encoded from action files by {@link #encode(Path, Path)}, and hold the same actions as
+ * {@link StreamInputEngine} reads from the action file. All numbers are big-endian. The layout is:
+ * <li>Magic number {@code "SACT"} (4 bytes), format version (2 bytes) and 2 reserved bytes.</li>
+ * <li>The id of the player, the number of actions and the number of escapes (4 bytes each).</li>
+ * <li>The escapes, i.e., the actions other than single-step moves, in the order of the actions: the index of the
+ * action among all actions (4 bytes), its code (1 byte), i.e., {@link ActionReader#UNDO}, {@link ActionReader#EXIT} or
+ * the direction of a move, and its number of steps (4 bytes), which is 1 for actions other than moves.</li>
+ * <li>The single-step moves, 2 bits each holding the direction of the move (see {@link Move#getDirection()}), starting
+ * from the lowest bits of each byte.</li>
+ * <p>
+ * Undo and exit actions and moves of several steps are rare, so keeping them out of the single-step moves leaves every
+ * such move at exactly 2 bits.
+ */
+public class PackedInputEngine implements InputEngine {
+
+    /**
+     * The magic number at the start of every packed action log, {@code "SACT"} in ASCII.
+     */
+    public static final int MAGIC = 0x53414354;
+
+    private static final short VERSION = 2;
+
+    private static final int HEADER_SIZE = 20;
+
+    private static final int ESCAPE_SIZE = 9;
+
+    private static final int MOVES_PER_BYTE = 4;
+
+    /**
+     * The action returned once all actions are exhausted.
+     */
+    private static final Exit END_OF_INPUT = new Exit(-1);
+
+    private final ByteBuffer log;
+
+    private final int playerId;
+
+    private final int count;
+
+    private final int escapeCount;
+
+    /**
+     * The offset of the moves in the log.
+     */
+    private final int movesOffset;
+
+    private int nextAction = 0;
+
+    private int nextMove = 0;
+
+    private int nextEscape = 0;
+
+    /**
+     * The index of the action of the next escape, or -1 if there are no more escapes.
+     */
+    private int nextEscapeAction;
+
+    /**
+     * @param log The packed action log from its position to its limit, which is shared and not modified.
+     * @throws IllegalArgumentException if the buffer does not hold a valid packed action log, including invalid escapes.
+     */
+    public PackedInputEngine(@NotNull ByteBuffer log) {
+        this.log = log.slice();
+        if (!isPacked(this.log))
+            throw new IllegalArgumentException("not a packed action log");
+        if (this.log.getShort(4) != VERSION)
+            throw new IllegalArgumentException("unsupported packed action log version: " + this.log.getShort(4));
+        this.playerId = this.log.getInt(8);
+        this.count = this.log.getInt(12);
+        this.escapeCount = this.log.getInt(16);
+        if (count < 0 || escapeCount < 0 || escapeCount > count)
+            throw new IllegalArgumentException("invalid packed action log header");
+        final var movesOffset = HEADER_SIZE + (long) escapeCount * ESCAPE_SIZE;
+        final var moveCount = count - escapeCount;
+        if (this.log.limit() < movesOffset + ((long) moveCount + MOVES_PER_BYTE - 1) / MOVES_PER_BYTE)
+            throw new IllegalArgumentException("truncated packed action log");
+        this.movesOffset = (int) movesOffset;
+        checkEscapes();
+        this.nextEscapeAction = escapeCount > 0 ? this.log.getInt(HEADER_SIZE) : -1;
+    }
+
+    /**
+     * Check that the escapes are in the order of the actions and denote valid actions, so that a corrupt log is
+     * rejected when it is opened rather than in the middle of a game.
+     *
+     * @throws IllegalArgumentException if an escape is invalid.
+     */
+    private void checkEscapes() {
+        var previous = -1;
+        for (int escape = 0; escape < escapeCount; escape++) {
+            final var offset = HEADER_SIZE + escape * ESCAPE_SIZE;
+            final var index = log.getInt(offset);
+            final var code = log.get(offset + Integer.BYTES);
+            final var steps = log.getInt(offset + Integer.BYTES + 1);
+            if (index <= previous || index >= count)
+                throw new IllegalArgumentException("invalid escape index: " + index);
+            final var isMove = code >= Move.DOWN && code <= Move.UP;
+            if (!isMove && code != ActionReader.UNDO && code != ActionReader.EXIT)
+                throw new IllegalArgumentException("invalid escape code: " + code);
+            if (isMove ? steps < 1 : steps != 1)
+                throw new IllegalArgumentException("invalid number of steps: " + steps);
+            previous = index;
+        }
+    }
+
+    /**
+     * @param buffer A buffer, from its position on.
+     * @return Whether the buffer starts with the magic number of packed action logs.
+     */
+    public static boolean isPacked(@NotNull ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Fetch the next action of the log.
+     * <p>
+     * If all actions are exhausted, an {@link Exit} action will be returned.
+     *
+     * @return the action.
+     */
+    @Override
+    public @NotNull Action fetchAction() {
+        if (nextAction >= count)
+            return END_OF_INPUT;
+        final int code;
+        var steps = 1;
+        if (nextAction == nextEscapeAction) {
+            final var offset = HEADER_SIZE + nextEscape * ESCAPE_SIZE;
+            code = log.get(offset + Integer.BYTES);
+            steps = log.getInt(offset + Integer.BYTES + 1);
+            nextEscape++;
+            nextEscapeAction = nextEscape < escapeCount ? log.getInt(HEADER_SIZE + nextEscape * ESCAPE_SIZE) : -1;
+        } else {
+            final var packed = log.get(movesOffset + nextMove / MOVES_PER_BYTE);
+            code = (packed >>> (nextMove % MOVES_PER_BYTE * 2)) & 3;
+            nextMove++;
+        }
+        nextAction++;
+        return ActionReader.toAction(playerId, code, steps);
+    }
+
+    /**
+     * Fetch the following actions, up to the first {@link Exit} action.
+     * The whole log is in the buffer, so all its actions are available.
+     *
+     * @param buffer The array to store the actions into, starting from index 0.
+     * @param max    The maximum number of actions to fetch, which is at most the length of the buffer.
+     * @return the number of actions fetched.
+     */
+    @Override
+    public int fetchActions(@NotNull Action[] buffer, int max) {
+        var count = 0;
+        while (count < max) {
+            final var action = fetchAction();
+            buffer[count++] = action;
+            if (action instanceof Exit)
+                break;
+        }
+        return count;
+    }
+
+    /**
+     * Encode an action file (see {@link StreamInputEngine}) into a packed action log, replacing the log if it exists.
+     *
+     * @param actionFile The action file.
+     * @param logFile    The packed action log to write.
+     * @throws IOException              if a file cannot be read or written.
+     * @throws IllegalArgumentException if the action file holds too many actions.
+     */
+    public static void encode(@NotNull Path actionFile, @NotNull Path logFile) throws IOException {
+        final int playerId;
+        var moves = new byte[ActionReader.BUFFER_SIZE];
+        var moveCount = 0;
+        var escapes = new byte[ESCAPE_SIZE * 16];
+        var escapeCount = 0;
+        try (final var channel = FileChannel.open(actionFile, StandardOpenOption.READ)) {
+            final var reader = new ActionReader(channel);
+            playerId = reader.readPlayerId();
+            for (int code = reader.next(); code != ActionReader.END; code = reader.next()) {
+                final var index = checkedCount(moveCount, escapeCount);
+                if (code == ActionReader.UNDO || code == ActionReader.EXIT || reader.steps() > 1) {
+                    if ((escapeCount + 1) * ESCAPE_SIZE > escapes.length)
+                        escapes = Arrays.copyOf(escapes, escapes.length * 2);
+                    ByteBuffer.wrap(escapes, escapeCount * ESCAPE_SIZE, ESCAPE_SIZE)
+                            .putInt(index)
+                            .put((byte) code)
+                            .putInt(reader.steps());
+                    escapeCount++;
+                    continue;
+                }
+                if (moveCount / MOVES_PER_BYTE >= moves.length)
+                    moves = Arrays.copyOf(moves, moves.length * 2);
+                moves[moveCount / MOVES_PER_BYTE] |= (byte) (code << (moveCount % MOVES_PER_BYTE * 2));
+                moveCount++;
+            }
+        }
+
+        final var header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) 0)
+                .putInt(playerId)
+                .putInt(moveCount + escapeCount)
+                .putInt(escapeCount)
+                .flip();
+        final var buffers = new ByteBuffer[]{
+                header,
+                ByteBuffer.wrap(escapes, 0, escapeCount * ESCAPE_SIZE),
+                ByteBuffer.wrap(moves, 0, (moveCount + MOVES_PER_BYTE - 1) / MOVES_PER_BYTE),
+        };
+        try (final var channel = FileChannel.open(logFile,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final var buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param moveCount   The number of moves so far.
+     * @param escapeCount The number of escapes so far.
+     * @return The number of actions so far, which is the index of the next action.
+     * @throws IllegalArgumentException if there are too many actions to be indexed.
+     */
+    private static int checkedCount(int moveCount, int escapeCount) {
+        if ((long) moveCount + escapeCount >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("too many actions");
+        return moveCount + escapeCount;
+    }
+}
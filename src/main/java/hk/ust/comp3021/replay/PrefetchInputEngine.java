@@ -0,0 +1,222 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.game.InputEngine;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An input engine that reads ahead from another input engine on a background thread.
+ * <p>
+ * Actions are fetched from the source engine by a daemon thread into a bounded ring buffer, which holds up to the
+ * given number of actions, until the source engine returns an {@link Exit} action. Fetching an action from this engine
+ * then only takes an action from the buffer, and only blocks if the source engine has not produced it yet, so slow
+ * storage is read while the game processes earlier actions.
+ * <p>
+ * The buffer has a single producer, the background thread, and a single consumer, so this engine must be fetched from
+ * by one thread at a time.
+ * <p>
+ * The background thread stops after the {@link Exit} action, or when this engine is closed (see {@link #close()}),
+ * which must be done if the game ends before all actions are fetched.
+ */
+public class PrefetchInputEngine implements InputEngine {
+
+    /**
+     * The default number of actions read ahead.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final InputEngine source;
+
+    private final Action[] buffer;
+
+    private final Thread producer;
+
+    private final int mask;
+
+    /**
+     * The number of actions taken from the buffer, only written by the consumer.
+     */
+    private volatile long head = 0;
+
+    /**
+     * The number of actions put into the buffer, only written by the producer.
+     */
+    private volatile long tail = 0;
+
+    /**
+     * Whether the producer has stopped, after putting the last action into the buffer.
+     */
+    private volatile boolean done = false;
+
+    /**
+     * Whether this engine has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The exception or error thrown by the source engine, rethrown once the actions before it are taken.
+     */
+    private volatile Throwable failure;
+
+    private volatile Thread waitingConsumer;
+
+    private volatile Thread waitingProducer;
+
+    /**
+     * The last {@link Exit} action taken, returned again once all actions are taken.
+     */
+    private Action lastExit = new Exit(-1);
+
+    /**
+     * @param source The input engine to read ahead from, which is only used by the background thread from now on.
+     */
+    public PrefetchInputEngine(@NotNull InputEngine source) {
+        this(source, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param source   The input engine to read ahead from, which is only used by the background thread from now on.
+     * @param capacity The maximum number of actions read ahead, which is rounded up to a power of 2.
+     * @throws IllegalArgumentException if the capacity is not positive or too large.
+     */
+    public PrefetchInputEngine(@NotNull InputEngine source, int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("invalid capacity: " + capacity);
+        this.source = source;
+        this.buffer = new Action[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+        this.mask = buffer.length - 1;
+        this.producer = new Thread(this::produce, "input-prefetch-" + threadCount.incrementAndGet());
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    /**
+     * Fetch the next action read ahead, waiting for it to be read if necessary.
+     * <p>
+     * Once the {@link Exit} action ending the source is taken, it is returned again on every call, and so is an
+     * {@link Exit} action once this engine is closed.
+     *
+     * @return the action.
+     * @throws RuntimeException the exception thrown by the source engine, once all actions before it are taken.
+     * @throws Error            the error thrown by the source engine, once all actions before it are taken.
+     */
+    @Override
+    public @NotNull Action fetchAction() {
+        if (closed)
+            return lastExit;
+        final var h = head;
+        while (h == tail) {
+            if (closed)
+                return lastExit;
+            if (done && h == tail) {
+                final var failure = this.failure;
+                if (failure instanceof RuntimeException e)
+                    throw e;
+                if (failure instanceof Error e)
+                    throw e;
+                if (failure != null)
+                    throw new RuntimeException(failure);
+                return lastExit;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (h == tail && !done && !closed)
+                LockSupport.park(this);
+            waitingConsumer = null;
+        }
+        final var index = (int) h & mask;
+        final var action = buffer[index];
+        buffer[index] = null;
+        head = h + 1;
+        final var producer = waitingProducer;
+        if (producer != null)
+            LockSupport.unpark(producer);
+        if (action instanceof Exit)
+            lastExit = action;
+        return action;
+    }
+
+    /**
+     * Take the actions already read ahead, up to the first {@link Exit} action, without waiting.
+     *
+     * @param buffer The array to store the actions into, starting from index 0.
+     * @param max    The maximum number of actions to fetch, which is at most the length of the buffer.
+     * @return the number of actions fetched, or 0 if no action has been read ahead or this engine is closed.
+     */
+    @Override
+    public int fetchActions(@NotNull Action[] buffer, int max) {
+        if (closed)
+            return 0;
+        final var h = head;
+        final var available = (int) Math.min(tail - h, max);
+        var count = 0;
+        while (count < available) {
+            final var index = (int) (h + count) & mask;
+            final var action = this.buffer[index];
+            this.buffer[index] = null;
+            buffer[count++] = action;
+            if (action instanceof Exit) {
+                lastExit = action;
+                break;
+            }
+        }
+        if (count > 0) {
+            head = h + count;
+            final var producer = waitingProducer;
+            if (producer != null)
+                LockSupport.unpark(producer);
+        }
+        return count;
+    }
+
+    /**
+     * Stop reading ahead, interrupting the background thread, and discard the actions read ahead.
+     * Fetching from this engine afterwards returns an {@link Exit} action.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        wakeConsumer();
+    }
+
+    /**
+     * Read ahead from the source engine until it returns an {@link Exit} action or throws, or this engine is closed.
+     */
+    private void produce() {
+        try {
+            Action action;
+            do {
+                action = source.fetchAction();
+                final var t = tail;
+                while (t - head == buffer.length) {
+                    if (closed)
+                        return;
+                    waitingProducer = Thread.currentThread();
+                    if (t - head == buffer.length && !closed)
+                        LockSupport.park(this);
+                    waitingProducer = null;
+                }
+                buffer[(int) t & mask] = action;
+                tail = t + 1;
+                wakeConsumer();
+            } while (!(action instanceof Exit) && !closed);
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            done = true;
+            wakeConsumer();
+        }
+    }
+
+    private void wakeConsumer() {
+        final var consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+}
@@ -12,7 +12,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import static hk.ust.comp3021.utils.StringResources.*;
 
@@ -106,20 +109,39 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
 
     // TODO: add any method or field you need.
 
+    /**
+     * The maximum number of actions an input engine processes under one acquisition of the lock in
+     * {@link Mode#FREE_RACE} mode.
+     */
+    private static final int BATCH_SIZE = 64;
+
 
     private final AtomicInteger nextID = new AtomicInteger(0);
     //private int numOfInputEngines;
-    private List<Boolean> exits = new ArrayList<>();
+    /**
+     * The indexes of the input engines which have exited, read by all threads without locking.
+     */
+    private final Set<Integer> exits = ConcurrentHashMap.newKeySet();
+    /**
+     * The lock serialising the processing of actions in {@link Mode#FREE_RACE} mode.
+     */
+    private final Object stateLock = new Object();
     private List<Action> actionList = new ArrayList<>();
-    //private ArrayList exits;
+    /**
+     * The input engine threads, indexed as the input engines, which are unparked when their turns come in
+     * {@link Mode#ROUND_ROBIN} mode.
+     */
+    private Thread[] inputThreads = new Thread[0];
+    /**
+     * The time in nanoseconds when the turn was handed over to another input engine, or 0 once that engine took it.
+     */
+    private volatile long handOffStart = 0;
+    private long handOffCount = 0;
+    private long handOffNanos = 0;
+    private long maxHandOffNanos = 0;
 
     private boolean allExit() {
-        for (int i = 0; i < inputEngines.size(); i++) {
-            if (!exits.get(i)) {
-                return false;
-            }
-        }
-        return true;
+        return exits.size() == inputEngines.size();
     }
 
 //    private int countOnGoing() {
@@ -132,6 +154,22 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
 //        return count;
 //    }
 
+    /**
+     * Process an action fetched from an input engine, marking the engine as exited if the action is an {@link Exit}.
+     *
+     * @param index  The index of the input engine.
+     * @param action The action.
+     */
+    private void processFetchedAction(int index, @NotNull Action action) {
+        if (action instanceof Exit)
+            exits.add(index);
+        final var result = processAction(action);
+        actionList.add(action);
+        if (result instanceof ActionResult.Failed failed) {
+            renderingEngine.message(failed.getReason());
+        }
+    }
+
     /**
      * The implementation of the Runnable for each input engine thread.
      * Each input engine should run in a separate thread.
@@ -159,85 +197,96 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
         public void run() {
             // TODO: modify this method to implement the requirements.
             if (mode == Mode.FREE_RACE) {
-                while (!allExit()) {
-                    synchronized (exits) {
+                // Actions are fetched outside the lock, so that only processing them is serialised, and actions
+                // already available are processed in batches, under one acquisition of the lock.
+                // Each thread stops as soon as its own input engine exits, instead of spinning until all have exited.
+                final var batch = new Action[BATCH_SIZE];
+                while (!exits.contains(index)) {
+                    // Once the game is won, no more action is fetched, as fetching may block forever.
+                    synchronized (stateLock) {
                         if (state.isWin()) {
-                            exits.set(index, true);
-                            //processAction(new Exit());
-                        } else {
-                            if (!exits.get(index)) {
-                                final var action = inputEngine.fetchAction();
-                                if (action.getClass() != Exit.class) {
-                                    final var result = processAction(action);
-                                    if (result instanceof ActionResult.Failed failed) {
-                                        renderingEngine.message(failed.getReason());
-                                    }
-                                    actionList.add(action);
-                                } else {
-                                    exits.set(index, true);
-                                    final var result = processAction(action);
-                                    if (result instanceof ActionResult.Failed failed) {
-                                        renderingEngine.message(failed.getReason());
-                                    }
-                                    actionList.add(action);
-                                }
+                            exits.add(index);
+                            break;
+                        }
+                    }
+                    var count = inputEngine.fetchActions(batch, batch.length);
+                    if (count == 0) {
+                        batch[0] = inputEngine.fetchAction();
+                        count = 1;
+                    }
+                    synchronized (stateLock) {
+                        for (int i = 0; i < count && !exits.contains(index); i++) {
+                            if (state.isWin()) {
+                                exits.add(index);
+                                break;
                             }
+                            processFetchedAction(index, batch[i]);
                         }
                     }
                 }
             }
 
             if (mode == Mode.ROUND_ROBIN) {
-                try {
-                    while (!shouldStop() || !allExit()) {
-                        //System.out.println("array = " + exits);
-                        synchronized (nextID) {
-                            while (nextID.get() != index && !allExit()) {
-                                nextID.wait();
-                            }
-                        }
-                        if (state.isWin()) {
-                            exits.set(index, true);
-                            //processAction(new Exit());
-                        } else {
-                            if (!exits.get(index)) {
-                                final var action = inputEngine.fetchAction();
-                                if (action.getClass() != Exit.class) {
-                                    final var result = processAction(action);
-                                    actionList.add(action);
-                                    if (result instanceof ActionResult.Failed failed) {
-                                        renderingEngine.message(failed.getReason());
-                                    }
-                                } else {
-                                    exits.set(index, true);
-                                    //System.out.println("set index " + index + "true");
-                                    final var result = processAction(action);
-                                    actionList.add(action);
-                                    if (result instanceof ActionResult.Failed failed) {
-                                        renderingEngine.message(failed.getReason());
-                                    }
-                                }
-                            }
-                        }
-                        synchronized (nextID) {
-
-                            if (!allExit()) {
-                                int count = 1;
-                                while ((exits.get((nextID.get() + count) % inputEngines.size()))) {
-                                    count++;
-                                }
-                                //System.out.println("count = " + count + ", nextID = " + nextID);
-                                nextID.set((nextID.get() + count) % inputEngines.size());
-                            }
-                            nextID.notifyAll();
-                        }
+                // Each thread parks until the previous player hands the turn over to it, and then hands the turn over
+                // to the next player which has not exited, waking only that player's thread.
+                while (true) {
+                    while (nextID.get() != index) {
+                        LockSupport.park(this);
+                        if (Thread.interrupted())
+                            return;
+                    }
+                    recordHandOff();
+                    if (state.isWin()) {
+                        exits.add(index);
+                        //processAction(new Exit());
+                    } else if (!exits.contains(index)) {
+                        processFetchedAction(index, inputEngine.fetchAction());
                     }
-                } catch (InterruptedException ignored) {
+                    final var next = nextLivePlayer(index);
+                    if (next < 0)
+                        return;
+                    if (next != index) {
+                        handOffStart = System.nanoTime();
+                        nextID.set(next);
+                        LockSupport.unpark(inputThreads[next]);
+                    }
+                    if (exits.contains(index))
+                        return;
                 }
             }
         }
     }
 
+    /**
+     * @param index The index of the input engine whose turn ends.
+     * @return The index of the input engine taking the next turn, i.e., the first following engine which has not
+     * exited, wrapping around, or -1 if all engines have exited.
+     */
+    private int nextLivePlayer(int index) {
+        for (int i = 1; i <= inputEngines.size(); i++) {
+            final var next = (index + i) % inputEngines.size();
+            if (!exits.contains(next))
+                return next;
+        }
+        return -1;
+    }
+
+    /**
+     * Record the latency of the turn hand-off just received, if any, in {@link Mode#ROUND_ROBIN} mode.
+     * Only the thread holding the turn calls this method, and the turn is handed over through {@link #nextID}, so the
+     * statistics need no further synchronization.
+     */
+    private void recordHandOff() {
+        final var start = handOffStart;
+        if (start == 0)
+            return;
+        handOffStart = 0;
+        final var latency = System.nanoTime() - start;
+        handOffCount++;
+        handOffNanos += latency;
+        maxHandOffNanos = Math.max(maxHandOffNanos, latency);
+    }
+
     /**
      * The implementation of the Runnable for the rendering engine thread.
      * The rendering engine should run in a separate thread.
@@ -290,15 +339,19 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
         List<Thread> threadList = new ArrayList<>();
         nextID.set(0);
         exits.clear();
+        handOffStart = 0;
+        handOffCount = 0;
+        handOffNanos = 0;
+        maxHandOffNanos = 0;
         //numOfInputEngines = inputEngines.size();
 
         for (int i = 0; i < inputEngines.size(); i++) {
-            exits.add(false);
             InputEngineRunnable inputEngine = new InputEngineRunnable(i, inputEngines.get(i));
             Thread tempThread = new Thread(inputEngine);
             threadList.add(tempThread);
         }
 
+        inputThreads = threadList.toArray(new Thread[0]);
         renderingEngineThread.start();
         for (Thread thread : threadList) {
             thread.start();
@@ -316,7 +369,18 @@ public class ReplaySokobanGame extends AbstractSokobanGame {
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
+        // input engines may still hold resources if the game ended before their last actions were fetched
+        for (final var inputEngine : inputEngines) {
+            inputEngine.close();
+        }
+        state.close();
 
+        if (mode == Mode.ROUND_ROBIN && handOffCount > 0) {
+            this.renderingEngine.message(String.format(TURN_HAND_OFF_TEMPLATE,
+                    handOffCount,
+                    handOffNanos / handOffCount / 1000,
+                    maxHandOffNanos / 1000));
+        }
        System.out.println(actionList);
         //System.out.println(exits);
     }
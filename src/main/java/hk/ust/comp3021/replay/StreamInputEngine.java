@@ -5,18 +5,26 @@ import hk.ust.comp3021.game.InputEngine;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * An input engine that fetches actions from terminal input.
+ * <p>
+ * The input is read in large blocks and decoded byte by byte (see {@link ActionReader}), so reading an action neither
+ * decodes a line into a string nor throws an exception.
  */
 public class StreamInputEngine implements InputEngine {
 
     /**
-     * The {@link Scanner} for reading input from the terminal.
+     * The reader of the input.
      */
-    private final Scanner terminalScanner;
+    private final ActionReader reader;
+
+    /**
+     * The action returned once all lines are exhausted.
+     */
+    private static final Exit END_OF_INPUT = new Exit(-1);
 
     private final int playerId;
 
@@ -24,8 +32,22 @@ public class StreamInputEngine implements InputEngine {
      * @param fileStream The stream for reading the input file.
      */
     public StreamInputEngine(@NotNull InputStream fileStream) {
-        this.terminalScanner = new Scanner(fileStream);
-        this.playerId = Integer.parseInt(terminalScanner.nextLine());
+        this(Channels.newChannel(fileStream));
+    }
+
+    /**
+     * @param channel The channel for reading the input file.
+     */
+    public StreamInputEngine(@NotNull ReadableByteChannel channel) {
+        this(new ActionReader(channel));
+    }
+
+    /**
+     * @param reader The reader of the input file, positioned at its start.
+     */
+    StreamInputEngine(@NotNull ActionReader reader) {
+        this.reader = reader;
+        this.playerId = reader.readPlayerId();
     }
 
     /**
@@ -34,37 +56,54 @@ public class StreamInputEngine implements InputEngine {
      * If all lines are exhausted, an {@link Exit} action will be returned.
      *
      * @return the user action.
+     * @throws UncheckedIOException if the input cannot be read.
      */
     @Override
     public @NotNull Action fetchAction() {
-        try {
-            while (true) {
-                var inputLine = terminalScanner.nextLine();
-                final var move = inputLine.charAt(0);
-                try {
-                    return char2Action(playerId, move);
-                } catch (IllegalArgumentException ignored) {
-                }
-            }
-        } catch (NoSuchElementException e) {
-            return new Exit(-1);
+        final var code = reader.next();
+        if (code == ActionReader.END)
+            return END_OF_INPUT;
+        return ActionReader.toAction(playerId, code, reader.steps());
+    }
+
+    /**
+     * Fetch the following actions already read from the input, up to the first {@link Exit} action, without waiting
+     * for more input.
+     *
+     * @param buffer The array to store the actions into, starting from index 0.
+     * @param max    The maximum number of actions to fetch, which is at most the length of the buffer.
+     * @return the number of actions fetched, or 0 if the input has to be read for the next action.
+     * @throws UncheckedIOException if the input cannot be read.
+     */
+    @Override
+    public int fetchActions(@NotNull Action[] buffer, int max) {
+        var count = 0;
+        while (count < max) {
+            final var code = reader.nextBuffered();
+            if (code == ActionReader.NONE)
+                break;
+            final var action = code == ActionReader.END
+                    ? END_OF_INPUT
+                    : ActionReader.toAction(playerId, code, reader.steps());
+            buffer[count++] = action;
+            if (action instanceof Exit)
+                break;
         }
+        return count;
     }
 
     /**
+     * Actions are immutable, so the same instance is returned for the same player and character (in either case) for
+     * player IDs up to 25.
+     *
      * @param playerId The ID of the player.
      * @param s        The character denoting the action.
      * @return The corresponding action.
      */
     public static Action char2Action(int playerId, char s) {
-        return switch (s) {
-            case 'H', 'h' -> new Move.Left(playerId);
-            case 'J', 'j' -> new Move.Down(playerId);
-            case 'K', 'k' -> new Move.Up(playerId);
-            case 'L', 'l' -> new Move.Right(playerId);
-            case 'U', 'u' -> new Undo(playerId);
-            case 'E', 'e' -> new Exit(playerId);
-            default -> throw new IllegalArgumentException(String.valueOf(s));
-        };
+        final var code = ActionReader.codeOf(s);
+        if (code < 0)
+            throw new IllegalArgumentException(String.valueOf(s));
+        return ActionReader.toAction(playerId, code, 1);
     }
 }
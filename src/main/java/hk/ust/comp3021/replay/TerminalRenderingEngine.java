@@ -4,6 +4,7 @@ import hk.ust.comp3021.entities.Box;
 import hk.ust.comp3021.entities.Empty;
 import hk.ust.comp3021.entities.Player;
 import hk.ust.comp3021.entities.Wall;
+import hk.ust.comp3021.game.Bitboard;
 import hk.ust.comp3021.game.GameState;
 import hk.ust.comp3021.game.Position;
 import hk.ust.comp3021.game.RenderingEngine;
@@ -27,15 +28,17 @@ public class TerminalRenderingEngine implements RenderingEngine {
 
     @Override
     public void render(@NotNull GameState state) {
+        final var width = state.getMapMaxWidth();
+        final var destinations = state.getDestinationBits();
         final var builder = new StringBuilder();
         for (int y = 0; y < state.getMapMaxHeight(); y++) {
-            for (int x = 0; x < state.getMapMaxWidth(); x++) {
+            for (int x = 0; x < width; x++) {
                 final var entity = state.getEntity(Position.of(x, y));
                 final var charToPrint = switch (entity) {
                     case Wall ignored -> '#';
                     case Box b -> (char) (b.getPlayerId() + 'a');
                     case Player p -> (char) (p.getId() + 'A');
-                    case Empty ignored -> state.getDestinations().contains(new Position(x, y)) ? '@' : '.';
+                    case Empty ignored -> Bitboard.get(destinations, y * width + x) ? '@' : '.';
                     case null -> ' ';
                 };
                 builder.append(charToPrint);
@@ -16,5 +16,7 @@ public class StringResources {
     public static final String GAME_EXIT_MESSAGE = "Game exits.";
     public static final String WIN_MESSAGE = "You win.";
 
+    public static final String TURN_HAND_OFF_TEMPLATE = "Turn hand-offs: %d, average latency: %d us, maximum latency: %d us";
+
     public static final String EXIT_COMMAND_TEXT = "exit";
 }
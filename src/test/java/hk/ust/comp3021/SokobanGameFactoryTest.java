@@ -1,15 +1,26 @@
 package hk.ust.comp3021;
 
+import hk.ust.comp3021.game.BinaryGameMap;
+import hk.ust.comp3021.game.GameState;
+import hk.ust.comp3021.game.LevelPack;
+import hk.ust.comp3021.game.SokobanGame;
+import hk.ust.comp3021.replay.ReplaySokobanGame;
+import hk.ust.comp3021.utils.TestHelper;
 import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class SokobanGameFactoryTest {
 
@@ -36,4 +47,174 @@ class SokobanGameFactoryTest {
         assertEquals(7, gameMap.getMaxHeight());
         assertEquals(233, gameMap.getUndoLimit().orElse(null));
     }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLoadCachedMap() throws IOException {
+        final var mapFile = tempDir.resolve("cachedMap.map");
+        Files.writeString(mapFile, """
+                233
+                ######
+                #A..@#
+                #.a..#
+                ######
+                """);
+        final var gameMap = SokobanGameFactory.loadCachedGameMap(mapFile);
+        assertSame(gameMap, SokobanGameFactory.loadCachedGameMap(mapFile));
+
+        Files.writeString(mapFile, """
+                -1
+                #######
+                #A...@#
+                #.a...#
+                #######
+                """);
+        final var changedMap = SokobanGameFactory.loadCachedGameMap(mapFile);
+        assertNotSame(gameMap, changedMap);
+        assertEquals(7, changedMap.getMaxWidth());
+        assertTrue(changedMap.getUndoLimit().isEmpty());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMapCacheEviction() throws IOException {
+        final var maps = new ArrayList<Path>();
+        for (int i = 0; i <= SokobanGameFactory.MAP_CACHE_CAPACITY; i++) {
+            final var mapFile = tempDir.resolve("map" + i + ".map");
+            Files.writeString(mapFile, """
+                    233
+                    ######
+                    #A..@#
+                    #.a..#
+                    ######
+                    """);
+            maps.add(mapFile);
+        }
+        final var first = SokobanGameFactory.loadCachedGameMap(maps.get(0));
+        final var second = SokobanGameFactory.loadCachedGameMap(maps.get(1));
+        assertSame(first, SokobanGameFactory.loadCachedGameMap(maps.get(0)));
+        for (final var mapFile : maps.subList(2, maps.size())) {
+            SokobanGameFactory.loadCachedGameMap(mapFile);
+        }
+
+        // the least recently used map is evicted
+        assertNotSame(second, SokobanGameFactory.loadCachedGameMap(maps.get(1)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLoadCompiledMap() throws IOException {
+        final var gameMap = TestHelper.parseGameMap("""
+                233
+                ######
+                #A..@#
+                #.a..#
+                ######
+                """);
+        final var mapFile = tempDir.resolve("compiled.smap");
+        BinaryGameMap.write(gameMap, mapFile);
+
+        final var loadedMap = SokobanGameFactory.loadGameMap(mapFile);
+        assertEquals(gameMap.getMaxWidth(), loadedMap.getMaxWidth());
+        assertEquals(gameMap.getMaxHeight(), loadedMap.getMaxHeight());
+        assertEquals(gameMap.getDestinations(), loadedMap.getDestinations());
+        assertEquals(233, loadedMap.getUndoLimit().orElse(null));
+        assertEquals(new GameState(gameMap), new GameState(loadedMap));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLoadFromLevelPack() throws IOException {
+        final var firstMap = tempDir.resolve("first.map");
+        Files.writeString(firstMap, """
+                233
+                ######
+                #A..@#
+                #.a..#
+                ######
+                """);
+        final var secondMap = tempDir.resolve("second.smap");
+        BinaryGameMap.write(TestHelper.parseGameMap("""
+                -1
+                #######
+                #A...@#
+                #.a...#
+                #######
+                """), secondMap);
+        final var packFile = tempDir.resolve("levels.spack");
+        LevelPack.write(packFile, List.of(firstMap, secondMap));
+
+        final var levelPack = SokobanGameFactory.openLevelPack(packFile);
+        assertEquals(2, levelPack.size());
+        assertEquals(6, levelPack.getLevel(0).getMaxWidth());
+        assertEquals(7, SokobanGameFactory.loadGameMap(packFile, 1).getMaxWidth());
+        assertSame(levelPack.getLevel(1), levelPack.getLevel(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> levelPack.getLevel(2));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLevelPackCacheEviction() throws IOException {
+        final var mapFile = tempDir.resolve("level.map");
+        Files.writeString(mapFile, """
+                233
+                ######
+                #A..@#
+                #.a..#
+                ######
+                """);
+        final var packFile = tempDir.resolve("evicting.spack");
+        LevelPack.write(packFile, List.of(mapFile, mapFile));
+
+        final var levelPack = LevelPack.open(packFile, 1);
+        final var first = levelPack.getLevel(0);
+        assertSame(first, levelPack.getLevel(0));
+        levelPack.getLevel(1);
+        assertNotSame(first, levelPack.getLevel(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRepeatsShareActionMappings() throws IOException {
+        final var mapFile = tempDir.resolve("replay.map");
+        Files.writeString(mapFile, """
+                233
+                ######
+                #A..@#
+                #...@#
+                #....#
+                #.a..#
+                #..a.#
+                ######
+                """);
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "0\nL\nH\n");
+        final var mappings = SokobanGameFactory.mapActionFiles(new String[]{actionFile.toString()});
+        assertEquals(1, mappings.size());
+        final var mapping = mappings.get(0);
+        assertEquals(6, mapping.remaining());
+
+        final var output = new ByteArrayOutputStream();
+        final var stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            final var repeats = new ArrayList<SokobanGame>();
+            for (int i = 0; i < 3; i++) {
+                repeats.add(SokobanGameFactory.createReplayGame(
+                        mapFile.toString(), ReplaySokobanGame.Mode.FREE_RACE, 1000, mappings));
+            }
+            for (final var game : repeats) {
+                game.run();
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+
+        // every repeat replays the whole file from its own view of the single mapping
+        final var replayed = output.toString(StandardCharsets.UTF_8)
+                .split("\\[Player A moves right, Player A moves left, Exit]", -1);
+        assertEquals(4, replayed.length);
+        assertEquals(0, mapping.position());
+        assertEquals(6, mapping.remaining());
+    }
 }
@@ -46,4 +46,25 @@ class MoveTest {
                 new Move.Down(-1).nextPosition(pos)
         );
     }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void nextIndex() {
+        final var width = 500;
+        final var cell = 233 * width + 233;
+        assertEquals(233 * width + 232, new Move.Left(-1).nextIndex(cell, width));
+        assertEquals(233 * width + 234, new Move.Right(-1).nextIndex(cell, width));
+        assertEquals(232 * width + 233, new Move.Up(-1).nextIndex(cell, width));
+        assertEquals(234 * width + 233, new Move.Down(-1).nextIndex(cell, width));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void deltasMatchNextPosition() {
+        for (final var move : new Move[]{new Move.Left(-1), new Move.Right(-1), new Move.Up(-1), new Move.Down(-1)}) {
+            final var next = move.nextPosition(pos);
+            assertEquals(next.x() - pos.x(), Move.dx(move.getDirection()));
+            assertEquals(next.y() - pos.y(), Move.dy(move.getDirection()));
+        }
+    }
 }
@@ -6,10 +6,12 @@ import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.Optional;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.Mockito.*;
 
 class AbstractSokobanGameTest {
@@ -277,8 +279,116 @@ class AbstractSokobanGameTest {
         assertInstanceOf(ActionResult.Success.class, result);
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSuccessfulMoveDoesNotAllocate() {
+        final var threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final var allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                233
+                #######
+                #@....#
+                #..A..#
+                #..a..#
+                #.....#
+                #.....#
+                #######
+                """));
+        final var game = new SokobanGameForTesting(gameState);
+        // pushing the box down, walking around it and pushing it back up
+        final var cycle = new Move[]{
+                new Move.Down(0), new Move.Right(0), new Move.Down(0), new Move.Down(0), new Move.Left(0),
+                new Move.Up(0), new Move.Right(0), new Move.Up(0), new Move.Up(0), new Move.Left(0),
+        };
+        for (int i = 0; i < 2000; i++) {
+            for (final var move : cycle) {
+                assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(move));
+            }
+        }
+
+        final var threadId = Thread.currentThread().getId();
+        final var before = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10000; i++) {
+            for (final var move : cycle) {
+                game.feedActionForProcessing(move);
+            }
+        }
+        final var allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(cycle[0]));
+        assertTrue(allocated < 1024, allocated + " bytes allocated");
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDoomedPush() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                233
+                ######
+                #.A..#
+                #.a.@#
+                #....#
+                ######
+                """));
+        final var game = new SokobanGameForTesting(gameState);
+
+        assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(new Move.Down(0)));
+        assertEquals(1, game.doomedPushes);
+        assertTrue(gameState.isDeadSquare(Position.of(2, 3)));
+
+        game.feedActionForProcessing(new Undo(0));
+        game.feedActionForProcessing(new Move.Left(0));
+        game.feedActionForProcessing(new Move.Down(0));
+        assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(new Move.Right(0)));
+        assertFalse(gameState.isDeadSquare(Position.of(3, 2)));
+        assertEquals(1, game.doomedPushes);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMultiStepMoveStopsAtWall() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                233
+                ######
+                #A..@#
+                #....#
+                #a...#
+                ######
+                """));
+        final var game = new SokobanGameForTesting(gameState);
+
+        assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(new Move.Right(0, 2)));
+        assertEquals(Position.of(3, 1), gameState.getPlayerPositionById(0));
+
+        final var result = game.feedActionForProcessing(new Move.Right(0, 5));
+        assertInstanceOf(ActionResult.Failed.class, result);
+        assertEquals(Position.of(4, 1), gameState.getPlayerPositionById(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testMultiStepMoveStopsAtWin() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+                233
+                #######
+                #Aa@..#
+                #######
+                """));
+        final var game = new SokobanGameForTesting(gameState);
+
+        assertInstanceOf(ActionResult.Success.class, game.feedActionForProcessing(new Move.Right(0, 3)));
+        assertTrue(gameState.isWin());
+        assertEquals(Position.of(2, 1), gameState.getPlayerPositionById(0));
+    }
+
     private static class SokobanGameForTesting extends AbstractSokobanGame {
 
+        private int doomedPushes = 0;
+
         protected SokobanGameForTesting(GameState gameState) {
             super(gameState);
         }
@@ -290,5 +400,10 @@ class AbstractSokobanGameTest {
         public ActionResult feedActionForProcessing(Action action) {
             return processAction(action);
         }
+
+        @Override
+        protected void onDoomedPush(Move move, Position boxPosition) {
+            doomedPushes++;
+        }
     }
 }
@@ -0,0 +1,104 @@
+package hk.ust.comp3021.game;
+
+import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundaryValidatorTest {
+
+    private static final String closedMap = """
+            ##########
+            #A...#.a.#
+            #.#..#...#
+            ##########
+            """;
+
+    private static final String[] leakingMaps = {
+            """
+            #####
+            #A..
+            #...#
+            #####
+            """,
+            """
+            #####
+            #A..#
+            #####
+             ###
+             #..
+             ###
+            """,
+            """
+            ####
+            #..
+            ####
+            ######
+            #..a.#
+            #..#.#
+            #A..
+            ######
+            """,
+    };
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testParallelScanAcceptsClosedMap() {
+        assertDoesNotThrow(() -> BoundaryValidator.validate(board(closedMap), 0, 1));
+        assertDoesNotThrow(() -> BoundaryValidator.validate(board(closedMap), Integer.MAX_VALUE, 1));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testParallelScanMatchesFloodFill() {
+        for (final var map : leakingMaps) {
+            final var serial = assertThrowsExactly(IllegalArgumentException.class,
+                    () -> BoundaryValidator.validate(board(map), Integer.MAX_VALUE, 1));
+            // a threshold of 0 forces the parallel scan, and one cell per task splits it down to single rows
+            final var parallel = assertThrowsExactly(IllegalArgumentException.class,
+                    () -> BoundaryValidator.validate(board(map), 0, 1));
+            assertEquals(serial.getMessage(), parallel.getMessage());
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testParallelScanReportsPlayerRegion() {
+        final var exception = assertThrowsExactly(IllegalArgumentException.class,
+                () -> BoundaryValidator.validate(board(leakingMaps[2]), 0, 1));
+        assertTrue(exception.getMessage().contains("with player A"));
+    }
+
+    /**
+     * @param map The rows of the map, using {@code #} for walls, {@code .} for empty cells, upper-case letters for
+     *            players, lower-case letters for boxes and spaces for absent cells.
+     * @return A board holding the map, which is not validated.
+     */
+    private static @NotNull Board board(@NotNull String map) {
+        final var rows = map.split("\n");
+        var width = 0;
+        for (final var row : rows) {
+            width = Math.max(width, row.length());
+        }
+        final var board = new Board(width, rows.length, Set.of());
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                final var c = rows[y].charAt(x);
+                board.cells[y * width + x] = switch (c) {
+                    case '#' -> Board.WALL;
+                    case '.' -> Board.EMPTY;
+                    case ' ' -> Board.ABSENT;
+                    default -> Character.isUpperCase(c)
+                            ? (byte) (Board.PLAYER | (c - 'A'))
+                            : (byte) (Board.BOX | (c - 'a'));
+                };
+            }
+        }
+        board.reindex();
+        return board;
+    }
+}
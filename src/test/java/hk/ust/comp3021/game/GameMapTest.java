@@ -9,6 +9,10 @@ import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -75,6 +79,21 @@ class GameMapTest {
         assertEquals(0, box.getPlayerId());
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testBitboards() {
+        final var gameMap = TestHelper.parseGameMap(rectangularMap);
+        final var width = gameMap.getMaxWidth();
+        final var destinations = gameMap.getDestinationBits();
+        assertEquals(2, Bitboard.count(destinations));
+        assertTrue(Bitboard.get(destinations, width + 4));
+        assertTrue(Bitboard.get(gameMap.getWallBits(), 0));
+        assertFalse(Bitboard.get(gameMap.getWallBits(), width + 1));
+        assertTrue(Bitboard.get(gameMap.getBoxBitsByPlayerId(0), 4 * width + 2));
+        assertEquals(2, Bitboard.count(gameMap.getBoxBitsByPlayerId(0)));
+        assertEquals(0, Bitboard.count(gameMap.getBoxBitsByPlayerId(1)));
+    }
+
     @Tag(TestKind.REGRESSION)
     @Test
     void testEmptyCellParsing() {
@@ -298,4 +317,108 @@ class GameMapTest {
             """;
         assertThrowsExactly(IllegalArgumentException.class, () -> TestHelper.parseGameMap(invalidMap));
     }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testDeadSquares() {
+        final var gameMap = TestHelper.parseGameMap(rectangularMap);
+        final var width = gameMap.getMaxWidth();
+        final var dead = gameMap.getDeadSquareBits();
+        // corners
+        assertTrue(Bitboard.get(dead, width + 1));
+        assertTrue(Bitboard.get(dead, 5 * width + 4));
+        // along walls without destinations
+        assertTrue(Bitboard.get(dead, 3 * width + 1));
+        assertTrue(Bitboard.get(dead, 5 * width + 2));
+        // destinations, the wall with destinations and the middle of the room
+        assertFalse(Bitboard.get(dead, width + 4));
+        assertFalse(Bitboard.get(dead, 4 * width + 4));
+        assertFalse(Bitboard.get(dead, 3 * width + 2));
+        // walls are not dead squares
+        assertFalse(Bitboard.get(dead, 0));
+        assertTrue(gameMap.isDeadSquare(Position.of(1, 1)));
+        assertFalse(gameMap.isDeadSquare(Position.of(2, 3)));
+        assertArrayEquals(dead, new GameState(gameMap).getDeadSquareBits());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPushDistances() {
+        final var gameMap = TestHelper.parseGameMap(rectangularMap);
+        final var destination = Position.of(4, 1);
+        assertEquals(0, gameMap.getPushDistance(destination, destination));
+        assertEquals(2, gameMap.getPushDistance(destination, Position.of(2, 1)));
+        assertEquals(-1, gameMap.getPushDistance(destination, Position.of(1, 1)));
+        assertEquals(-1, gameMap.getPushDistance(destination, Position.of(0, 0)));
+        assertEquals(3, gameMap.getMinPushDistance(Position.of(2, 3)));
+        assertEquals(-1, gameMap.getMinPushDistance(Position.of(1, 5)));
+        assertThrowsExactly(IllegalArgumentException.class,
+                () -> gameMap.getPushDistance(Position.of(2, 3), Position.of(2, 1)));
+
+        final var gameState = new GameState(gameMap);
+        assertEquals(2, gameState.getPushDistance(destination, Position.of(2, 1)));
+        assertEquals(3, gameState.getMinPushDistance(Position.of(2, 3)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testParseFromStream() throws IOException {
+        final var bytes = rectangularMap.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8);
+        final var gameMap = GameMap.parse(new ByteArrayInputStream(bytes));
+        assertEquals(6, gameMap.getMaxWidth());
+        assertEquals(7, gameMap.getMaxHeight());
+        assertEquals(233, gameMap.getUndoLimit().orElse(null));
+        assertInstanceOf(Player.class, gameMap.getEntity(Position.of(1, 1)));
+        assertEquals(gameMap.getDestinations(), GameMap.parse(ByteBuffer.wrap(bytes)).getDestinations());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testErrorLocation() {
+        final var invalidMap = """
+                233
+                ######
+                #A..@#
+                #..A@#
+                ######
+                """;
+        final var exception = assertThrowsExactly(IllegalArgumentException.class, () -> TestHelper.parseGameMap(invalidMap));
+        assertTrue(exception.getMessage().contains("line 4, column 4"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testParsedMapIsUnmodifiable() {
+        final var gameMap = TestHelper.parseGameMap(rectangularMap);
+        assertThrows(UnsupportedOperationException.class, () -> gameMap.putEntity(Position.of(1, 1), new Wall()));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testOpenMapReportsLeakingRegion() {
+        final var invalidMap = """
+            233
+            ######
+            #A.a@#
+            #..a@.
+            ######
+            """;
+        final var exception = assertThrowsExactly(IllegalArgumentException.class, () -> TestHelper.parseGameMap(invalidMap));
+        assertTrue(exception.getMessage().contains("9 cells with player A"));
+        assertTrue(exception.getMessage().contains("line 4, column 6"));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testOpenRegionWithoutPlayer() {
+        final var invalidMap = """
+            233
+            ######
+            #A.a@#
+            ######
+             ...
+            """;
+        final var exception = assertThrowsExactly(IllegalArgumentException.class, () -> TestHelper.parseGameMap(invalidMap));
+        assertTrue(exception.getMessage().contains("region of 3 cells leaks"));
+    }
 }
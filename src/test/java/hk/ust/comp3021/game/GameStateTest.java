@@ -6,7 +6,10 @@ import hk.ust.comp3021.utils.TestHelper;
 import hk.ust.comp3021.utils.TestKind;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -80,6 +83,27 @@ class GameStateTest {
         assertTrue(gameState.isWin());
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testWinRevertedByUndo() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            233
+            ######
+            #A.a@#
+            #..a@#
+            ######
+            """));
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(3, 2), Position.of(4, 2));
+        assertTrue(gameState.isWin());
+        assertEquals(new HashSet<>(Arrays.asList(Position.of(4, 1), Position.of(4, 2))), gameState.getBoxPositionsByPlayerId(0));
+
+        gameState.undo();
+        assertFalse(gameState.isWin());
+        assertEquals(new HashSet<>(Arrays.asList(Position.of(3, 1), Position.of(3, 2))), gameState.getBoxPositionsByPlayerId(0));
+        assertTrue(gameState.getBoxPositionsByPlayerId(1).isEmpty());
+    }
+
     @Tag(TestKind.REGRESSION)
     @Test
     void testMove() {
@@ -96,6 +120,26 @@ class GameStateTest {
         assertEquals(Position.of(2, 1), gameState.getPlayerPositionById(0));
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPositionsOnBoardAreInterned() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            233
+            ######
+            #A.a@#
+            #..a@#
+            ######
+            """
+        ));
+
+        final var position = gameState.getPlayerPositionById(0);
+        gameState.move(Position.of(1, 1), Position.of(2, 1));
+        gameState.move(Position.of(2, 1), Position.of(1, 1));
+        assertSame(position, gameState.getPlayerPositionById(0));
+        // positions are interned per map, and shared by forks
+        assertSame(position, gameState.fork().getPlayerPositionById(0));
+    }
+
     @Tag(TestKind.REGRESSION)
     @Test
     void testPushBox() {
@@ -166,6 +210,41 @@ class GameStateTest {
         assertEquals(232, gameState.getUndoQuota().orElse(null));
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testUndoMultipleCheckpoints() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            233
+            #######
+            #.Aa.@#
+            #..a.@#
+            #######
+            """
+        ));
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(2, 1), Position.of(3, 1));
+        gameState.checkpoint();
+        gameState.move(Position.of(4, 1), Position.of(5, 1));
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.checkpoint();
+        gameState.move(Position.of(4, 1), Position.of(4, 2));
+
+        gameState.undo();
+        assertEquals(Position.of(3, 1), gameState.getPlayerPositionById(0));
+        assertInstanceOf(Box.class, gameState.getEntity(Position.of(4, 1)));
+        assertInstanceOf(Empty.class, gameState.getEntity(Position.of(5, 1)));
+        assertEquals(232, gameState.getUndoQuota().orElse(null));
+
+        gameState.undo();
+        assertEquals(Position.of(2, 1), gameState.getPlayerPositionById(0));
+        assertInstanceOf(Box.class, gameState.getEntity(Position.of(3, 1)));
+        assertInstanceOf(Empty.class, gameState.getEntity(Position.of(4, 1)));
+        assertEquals(231, gameState.getUndoQuota().orElse(null));
+
+        gameState.undo();
+        assertEquals(231, gameState.getUndoQuota().orElse(null));
+    }
+
     @Tag(TestKind.REGRESSION)
     @Test
     void testUndoWhenThereIsMoveButNoCheckpoint() {
@@ -200,6 +279,208 @@ class GameStateTest {
         assertEquals(233, gameState.getUndoQuota().orElse(null));
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testEqualsAndHashCode() {
+        final var mapText = """
+            233
+            ######
+            #.Aa@#
+            #..a@#
+            ######
+            """;
+        final var gameState = new GameState(TestHelper.parseGameMap(mapText));
+        final var other = new GameState(TestHelper.parseGameMap(mapText));
+        assertEquals(gameState, other);
+        assertEquals(gameState.hashCode(), other.hashCode());
+
+        gameState.move(Position.of(2, 1), Position.of(2, 2));
+        assertNotEquals(gameState, other);
+
+        other.move(Position.of(2, 1), Position.of(2, 2));
+        assertEquals(gameState, other);
+        assertEquals(gameState.hashCode(), other.hashCode());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testStateHash() {
+        final var mapText = """
+            233
+            ######
+            #.Aa@#
+            #..a@#
+            ######
+            """;
+        final var gameState = new GameState(TestHelper.parseGameMap(mapText));
+        final var initialHash = gameState.stateHash();
+        assertEquals(initialHash, new GameState(TestHelper.parseGameMap(mapText)).stateHash());
+
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(2, 1), Position.of(3, 1));
+        gameState.checkpoint();
+        assertNotEquals(initialHash, gameState.stateHash());
+
+        gameState.undo();
+        assertEquals(initialHash, gameState.stateHash());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFork() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            233
+            ######
+            #.Aa@#
+            #..a@#
+            ######
+            """
+        ));
+        gameState.move(Position.of(2, 1), Position.of(1, 1));
+        final var fork = gameState.fork();
+        assertEquals(gameState, fork);
+
+        fork.move(Position.of(1, 1), Position.of(1, 2));
+        assertEquals(Position.of(1, 2), fork.getPlayerPositionById(0));
+        assertEquals(Position.of(1, 1), gameState.getPlayerPositionById(0));
+        assertInstanceOf(Empty.class, gameState.getEntity(Position.of(1, 2)));
+
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        gameState.move(Position.of(1, 1), Position.of(3, 1));
+        assertTrue(fork.getBoxPositionsByPlayerId(0).contains(Position.of(3, 1)));
+        assertInstanceOf(Empty.class, fork.getEntity(Position.of(4, 1)));
+        assertNotEquals(gameState.stateHash(), fork.stateHash());
+
+        fork.undo();
+        assertEquals(Position.of(1, 1), fork.getPlayerPositionById(0));
+        assertEquals(233, fork.getUndoQuota().orElse(null));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testBitboards() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            233
+            ######
+            #.Aa@#
+            #..a@#
+            ######
+            """
+        ));
+        final var width = gameState.getMapMaxWidth();
+        final var destinations = gameState.getDestinationBits();
+        assertEquals(2, Bitboard.count(destinations));
+        assertTrue(Bitboard.get(destinations, width + 4));
+        assertTrue(Bitboard.get(destinations, 2 * width + 4));
+        assertEquals(16, Bitboard.count(gameState.getWallBits()));
+        assertTrue(Bitboard.get(gameState.getWallBits(), 0));
+
+        gameState.move(Position.of(3, 1), Position.of(4, 1));
+        final var boxes = gameState.getBoxBitsByPlayerId(0);
+        assertTrue(Bitboard.get(boxes, width + 4));
+        assertFalse(Bitboard.get(boxes, width + 3));
+        assertFalse(Bitboard.containsAll(boxes, destinations));
+
+        gameState.move(Position.of(3, 2), Position.of(4, 2));
+        assertTrue(Bitboard.containsAll(gameState.getBoxBitsByPlayerId(0), destinations));
+        assertTrue(gameState.isWin());
+        assertEquals(0, Bitboard.count(gameState.getBoxBitsByPlayerId(1)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testUndoSpilledHistory(@TempDir Path tempDir) {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            -1
+            ######
+            #A...#
+            #.a.@#
+            ######
+            """
+        ));
+        gameState.spillHistoryTo(tempDir, 2);
+        final var positions = new ArrayList<Position>();
+        positions.add(gameState.getPlayerPositionById(0));
+        for (int i = 0; i < 20; i++) {
+            final var from = gameState.getPlayerPositionById(0);
+            assertNotNull(from);
+            final var to = Position.of(from.x() == 1 ? 2 : 1, 1);
+            gameState.move(from, to);
+            gameState.checkpoint();
+            positions.add(to);
+        }
+
+        for (int i = positions.size() - 2; i >= 0; i--) {
+            gameState.undo();
+            assertEquals(positions.get(i), gameState.getPlayerPositionById(0));
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testCloseSpilledHistory(@TempDir Path tempDir) {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            -1
+            ######
+            #A...#
+            #.a.@#
+            ######
+            """
+        ));
+        gameState.spillHistoryTo(tempDir, 2);
+        final var xs = new int[]{1, 2, 3, 4, 3, 2};
+        final var positions = new ArrayList<Position>();
+        positions.add(gameState.getPlayerPositionById(0));
+        for (int i = 1; i <= 20; i++) {
+            final var to = Position.of(xs[i % xs.length], 1);
+            gameState.move(positions.get(i - 1), to);
+            gameState.checkpoint();
+            positions.add(to);
+        }
+
+        gameState.close();
+
+        // only the checkpoints kept in memory can still be undone
+        gameState.undo();
+        gameState.undo();
+        assertEquals(positions.get(18), gameState.getPlayerPositionById(0));
+        gameState.undo();
+        assertEquals(positions.get(18), gameState.getPlayerPositionById(0));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testUndoEvictedCheckpoints() {
+        final var gameState = new GameState(TestHelper.parseGameMap("""
+            2
+            #######
+            #A....#
+            #.a..@#
+            #######
+            """
+        ));
+        final var positions = new ArrayList<Position>();
+        positions.add(gameState.getPlayerPositionById(0));
+        for (int x = 2; x <= 5; x++) {
+            final var to = Position.of(x, 1);
+            gameState.move(positions.get(positions.size() - 1), to);
+            gameState.checkpoint();
+            positions.add(to);
+        }
+
+        gameState.undo();
+        assertEquals(positions.get(3), gameState.getPlayerPositionById(0));
+        assertEquals(1, gameState.getUndoQuota().orElse(null));
+        // the oldest checkpoint retained for the last undo
+        gameState.undo();
+        assertEquals(positions.get(2), gameState.getPlayerPositionById(0));
+        assertEquals(0, gameState.getUndoQuota().orElse(null));
+        assertInstanceOf(Empty.class, gameState.getEntity(positions.get(3)));
+        // all older checkpoints were evicted, so there is nothing left to revert to
+        gameState.undo();
+        assertEquals(positions.get(2), gameState.getPlayerPositionById(0));
+    }
+
     private Entity generateEntity(int key) {
         return switch (key % 4) {
             case 0 -> new Box(0);
@@ -0,0 +1,53 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.actions.Undo;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedInputEngineTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchFromMapping() throws IOException {
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "1\nH\nx\nU\nE\n");
+
+        final var inputEngine = new MappedInputEngine(MappedInputEngine.map(actionFile));
+
+        final var left = inputEngine.fetchAction();
+        assertInstanceOf(Move.Left.class, left);
+        assertEquals(1, left.getInitiator());
+        assertInstanceOf(Undo.class, inputEngine.fetchAction());
+        assertInstanceOf(Exit.class, inputEngine.fetchAction());
+        assertInstanceOf(Exit.class, inputEngine.fetchAction());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSharedMapping() throws IOException {
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "0\nL\nK\n");
+        final var mapping = MappedInputEngine.map(actionFile);
+
+        final var first = new MappedInputEngine(mapping);
+        assertInstanceOf(Move.Right.class, first.fetchAction());
+        final var second = new MappedInputEngine(mapping);
+        assertInstanceOf(Move.Right.class, second.fetchAction());
+        assertInstanceOf(Move.Up.class, first.fetchAction());
+        assertInstanceOf(Move.Up.class, second.fetchAction());
+        assertEquals(0, mapping.position());
+    }
+}
@@ -0,0 +1,125 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.actions.Undo;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedInputEngineTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testEncodeAndDecode() throws IOException {
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "3\nH\nJ\nK3\nu\nL\nE\nH\n");
+        final var logFile = tempDir.resolve("actions.sact");
+        PackedInputEngine.encode(actionFile, logFile);
+
+        final var log = MappedInputEngine.map(logFile);
+        assertTrue(PackedInputEngine.isPacked(log));
+        final var inputEngine = new PackedInputEngine(log);
+        final var expected = new Class<?>[]{
+                Move.Left.class, Move.Down.class, Move.Up.class,
+                Undo.class, Move.Right.class, Exit.class, Move.Left.class, Exit.class, Exit.class,
+        };
+        for (int i = 0; i < expected.length; i++) {
+            final var action = inputEngine.fetchAction();
+            assertInstanceOf(expected[i], action);
+            assertEquals(i < 7 ? 3 : -1, action.getInitiator());
+            if (action instanceof Move move)
+                assertEquals(i == 2 ? 3 : 1, move.getSteps());
+        }
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSameActionsAsText() throws IOException {
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "1
+L12
+J
+u3
+K
+x
+H0
+K40000
+L
+h2
+E5
+J
+");
+        final var logFile = tempDir.resolve("actions.sact");
+        PackedInputEngine.encode(actionFile, logFile);
+
+        final var textEngine = new StreamInputEngine(Files.newInputStream(actionFile));
+        final var packedEngine = new PackedInputEngine(MappedInputEngine.map(logFile));
+        Action expected;
+        do {
+            expected = textEngine.fetchAction();
+            final var actual = packedEngine.fetchAction();
+            assertSame(expected.getClass(), actual.getClass());
+            assertEquals(expected.getInitiator(), actual.getInitiator());
+            assertEquals(expected.toString(), actual.toString());
+        } while (!(expected instanceof Exit));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectInvalidEscape() throws IOException {
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "0
+L
+U
+E
+");
+        final var logFile = tempDir.resolve("actions.sact");
+        PackedInputEngine.encode(actionFile, logFile);
+        final var log = Files.readAllBytes(logFile);
+        assertDoesNotThrow(() -> new PackedInputEngine(ByteBuffer.wrap(log)));
+
+        // the code of the first escape, which is the undo
+        log[24] = 9;
+        assertThrowsExactly(IllegalArgumentException.class, () -> new PackedInputEngine(ByteBuffer.wrap(log)));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testPackedSize() throws IOException {
+        final var actionFile = tempDir.resolve("actions.txt");
+        Files.writeString(actionFile, "0\n" + "L\nJ\nH\nK\n".repeat(1000) + "E\n");
+        final var logFile = tempDir.resolve("actions.sact");
+        PackedInputEngine.encode(actionFile, logFile);
+
+        assertTrue(Files.size(logFile) * 7 < Files.size(actionFile));
+        final var inputEngine = new PackedInputEngine(MappedInputEngine.map(logFile));
+        for (int i = 0; i < 1000; i++) {
+            assertInstanceOf(Move.Right.class, inputEngine.fetchAction());
+            assertInstanceOf(Move.Down.class, inputEngine.fetchAction());
+            assertInstanceOf(Move.Left.class, inputEngine.fetchAction());
+            assertInstanceOf(Move.Up.class, inputEngine.fetchAction());
+        }
+        assertInstanceOf(Exit.class, inputEngine.fetchAction());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRejectTextFile() {
+        final var buffer = ByteBuffer.wrap("0\nL\n".getBytes());
+        assertFalse(PackedInputEngine.isPacked(buffer));
+        assertThrowsExactly(IllegalArgumentException.class, () -> new PackedInputEngine(buffer));
+    }
+}
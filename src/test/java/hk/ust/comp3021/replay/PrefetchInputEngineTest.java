@@ -0,0 +1,127 @@
+package hk.ust.comp3021.replay;
+
+import hk.ust.comp3021.actions.Action;
+import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
+import hk.ust.comp3021.game.InputEngine;
+import hk.ust.comp3021.utils.TestKind;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefetchInputEngineTest {
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testKeepsOrder() {
+        final var actions = 10000;
+        final var source = new StreamInputEngine(new ByteArrayInputStream(
+                ("0\n" + "L\nH\n".repeat(actions / 2)).getBytes(StandardCharsets.UTF_8)));
+
+        final var inputEngine = new PrefetchInputEngine(source, 4);
+
+        for (int i = 0; i < actions; i++) {
+            assertInstanceOf(i % 2 == 0 ? Move.Right.class : Move.Left.class, inputEngine.fetchAction());
+        }
+        final var exit = inputEngine.fetchAction();
+        assertInstanceOf(Exit.class, exit);
+        assertSame(exit, inputEngine.fetchAction());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testStopsAfterExit() throws InterruptedException {
+        final var fetched = new AtomicInteger();
+        final InputEngine source = () -> fetched.incrementAndGet() == 3 ? new Exit(0) : new Move.Up(0);
+
+        final var inputEngine = new PrefetchInputEngine(source);
+
+        assertInstanceOf(Move.Up.class, inputEngine.fetchAction());
+        assertInstanceOf(Move.Up.class, inputEngine.fetchAction());
+        assertInstanceOf(Exit.class, inputEngine.fetchAction());
+        Thread.sleep(50);
+        assertEquals(3, fetched.get());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRethrowsFailure() {
+        final var fetched = new AtomicInteger();
+        final InputEngine source = () -> {
+            if (fetched.incrementAndGet() == 2)
+                throw new IllegalStateException("broken");
+            return new Move.Down(0);
+        };
+
+        final var inputEngine = new PrefetchInputEngine(source);
+
+        assertInstanceOf(Move.Down.class, inputEngine.fetchAction());
+        final var e = assertThrowsExactly(IllegalStateException.class, inputEngine::fetchAction);
+        assertEquals("broken", e.getMessage());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRethrowsError() {
+        final InputEngine source = () -> {
+            throw new StackOverflowError();
+        };
+
+        final var inputEngine = new PrefetchInputEngine(source);
+
+        assertThrowsExactly(StackOverflowError.class, inputEngine::fetchAction);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testCloseStopsProducer() throws InterruptedException {
+        final var fetched = new AtomicInteger();
+        final var producer = new AtomicReference<Thread>();
+        final InputEngine source = () -> {
+            producer.set(Thread.currentThread());
+            fetched.incrementAndGet();
+            return new Move.Left(0);
+        };
+
+        final var inputEngine = new PrefetchInputEngine(source, 4);
+        assertInstanceOf(Move.Left.class, inputEngine.fetchAction());
+        // the buffer is full, so the producer waits for room until the engine is closed
+        while (fetched.get() < 6) {
+            Thread.sleep(1);
+        }
+        inputEngine.close();
+
+        producer.get().join(1000);
+        assertFalse(producer.get().isAlive());
+        assertEquals(6, fetched.get());
+        assertInstanceOf(Exit.class, inputEngine.fetchAction());
+        assertEquals(0, inputEngine.fetchActions(new Action[4], 4));
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchAvailableActions() {
+        final var source = new StreamInputEngine(new ByteArrayInputStream(
+                "0\nJ\nJ\nE\nJ\n".getBytes(StandardCharsets.UTF_8)));
+        final var inputEngine = new PrefetchInputEngine(source);
+        final var buffer = new Action[8];
+
+        final var fetched = new ArrayList<Action>();
+        while (fetched.isEmpty() || !(fetched.get(fetched.size() - 1) instanceof Exit)) {
+            final var count = inputEngine.fetchActions(buffer, buffer.length);
+            fetched.addAll(Arrays.asList(buffer).subList(0, count));
+        }
+        assertEquals(3, fetched.size());
+        assertInstanceOf(Move.Down.class, fetched.get(0));
+        assertInstanceOf(Move.Down.class, fetched.get(1));
+        assertSame(fetched.get(2), inputEngine.fetchAction());
+    }
+}
@@ -10,6 +10,8 @@ import org.mockito.stubbing.Answer;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -127,6 +129,71 @@ class ReplaySokobanGameTest {
         assertArrayEquals(actions1.toArray(), processedActions.stream().filter(action -> action.getInitiator() == 1).toArray());
     }
 
+    @DisplayName("Input engines waiting for actions should not block other input engines in FREE_RACE mode")
+    @Test
+    @Timeout(5)
+    @Tag(TestKind.REGRESSION)
+    void testFetchOutsideLock() {
+        final var gameState = mock(GameState.class);
+        final var inputEngine0 = mock(InputEngine.class);
+        final var inputEngine1 = mock(InputEngine.class);
+        final var renderingEngine = mock(RenderingEngine.class);
+        final var game = spy(new TestGame(gameState, List.of(inputEngine0, inputEngine1), renderingEngine));
+
+        final var processed1 = new CountDownLatch(1);
+        when(inputEngine0.fetchAction()).thenAnswer(invocation -> {
+            // only available once the other input engine has processed its move
+            processed1.await();
+            return new Exit(0);
+        });
+        final var move = new Move.Right(1);
+        when(inputEngine1.fetchAction()).thenReturn(move, new Exit(1));
+        final var processedActions = new ActionList();
+        doAnswer(invocation -> {
+            final var action = invocation.getArgument(0, Action.class);
+            processedActions.add(action);
+            if (action.getInitiator() == 1)
+                processed1.countDown();
+            return invocation.callRealMethod();
+        }).when(game).processAction(any());
+
+        game.run();
+
+        assertEquals(List.of(move), processedActions);
+    }
+
+    @DisplayName("Input engines should not be fetched from once the game is won in FREE_RACE mode")
+    @Test
+    @Timeout(5)
+    @Tag(TestKind.REGRESSION)
+    void testNoFetchAfterWin() {
+        final var gameState = mock(GameState.class);
+        final var inputEngine = mock(InputEngine.class);
+        final var renderingEngine = mock(RenderingEngine.class);
+        final var game = spy(new TestGame(gameState, List.of(inputEngine), renderingEngine));
+
+        final var won = new AtomicBoolean(false);
+        final var blocked = new CountDownLatch(1);
+        when(gameState.isWin()).thenAnswer(invocation -> won.get());
+        when(inputEngine.fetchAction())
+                .thenReturn(new Move.Right(0))
+                .thenAnswer(invocation -> {
+                    // an input engine blocking for the next input, e.g., a terminal
+                    blocked.await();
+                    return new Exit(0);
+                });
+        doAnswer(invocation -> {
+            final var result = invocation.callRealMethod();
+            won.set(true);
+            return result;
+        }).when(game).processAction(any());
+
+        game.run();
+
+        verify(inputEngine, times(1)).fetchAction();
+        verify(inputEngine).close();
+    }
+
     @DisplayName("Action order should be enforced in ROUND_ROBIN mode (all input engines have same length of actions")
     @Test
     @Tag(TestKind.PUBLIC)
@@ -169,6 +236,43 @@ class ReplaySokobanGameTest {
         }
     }
 
+    @DisplayName("Exited input engines should be skipped in ROUND_ROBIN mode, keeping the order of the others")
+    @RepeatedTest(20)
+    @Timeout(5)
+    @Tag(TestKind.REGRESSION)
+    void testRoundRobinModeSkipsExited() {
+        final var gameState = mock(GameState.class);
+        final var inputEngine0 = mock(StreamInputEngine.class);
+        final var inputEngine1 = mock(StreamInputEngine.class);
+        final var inputEngine2 = mock(StreamInputEngine.class);
+        final var renderingEngine = mock(RenderingEngine.class);
+        final var inputEngines = List.of(inputEngine0, inputEngine1, inputEngine2);
+        final var game = spy(new TestGame(ReplaySokobanGame.Mode.ROUND_ROBIN, gameState, inputEngines, renderingEngine));
+
+        final var actions0 = Arrays.<Action>asList(new Move.Down(0), new Move.Right(0));
+        final var actions1 = Arrays.<Action>asList(new Move.Left(1));
+        final var actions2 = Arrays.<Action>asList(new Move.Up(2), new Move.Down(2), new Move.Up(2), new Move.Down(2));
+        final var processedActions = new ActionList();
+        when(inputEngine0.fetchAction()).thenAnswer(new RandomlyPausedActionProducer(actions0));
+        when(inputEngine1.fetchAction()).thenAnswer(new RandomlyPausedActionProducer(actions1));
+        when(inputEngine2.fetchAction()).thenAnswer(new RandomlyPausedActionProducer(actions2));
+        doAnswer(invocation -> {
+            processedActions.add(invocation.getArgument(0));
+            return invocation.callRealMethod();
+        }).when(game).processAction(any());
+
+        game.run();
+
+        final var expected = List.of(
+                actions0.get(0), actions1.get(0), actions2.get(0),
+                actions0.get(1), actions2.get(1),
+                actions2.get(2),
+                actions2.get(3)
+        );
+        assertEquals(expected, processedActions);
+        verify(renderingEngine).message(startsWith("Turn hand-offs"));
+    }
+
     @DisplayName("FPS parameter should specify the times render method is invoked per second")
     @RepeatedTest(100)
     @Timeout(5)
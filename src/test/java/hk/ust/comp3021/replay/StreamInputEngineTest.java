@@ -1,8 +1,11 @@
 package hk.ust.comp3021.replay;
 
+import hk.ust.comp3021.actions.Action;
 import hk.ust.comp3021.actions.Exit;
+import hk.ust.comp3021.actions.Move;
 import hk.ust.comp3021.actions.Undo;
 import hk.ust.comp3021.utils.TestKind;
+import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -12,8 +15,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class StreamInputEngineTest {
 
@@ -59,6 +61,116 @@ class StreamInputEngineTest {
         assertEquals(playerId, action.getInitiator());
     }
 
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSkipInvalidLines() {
+        final var inputStream = fixValueStream("2\r\n\r\nx\n?ignored\r\nk\nUndo\n");
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+
+        final var up = inputEngine.fetchAction();
+        assertTrue(up instanceof Move.Up);
+        assertEquals(2, up.getInitiator());
+        assertTrue(inputEngine.fetchAction() instanceof Undo);
+        assertTrue(inputEngine.fetchAction() instanceof Exit);
+        assertTrue(inputEngine.fetchAction() instanceof Exit);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testLongInput() {
+        final var actions = 100000;
+        final var inputStream = fixValueStream("0\n" + "L\nH\n".repeat(actions / 2));
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+
+        for (int i = 0; i < actions; i++) {
+            assertEquals(i % 2 == 0 ? Move.RIGHT : Move.LEFT, ((Move) inputEngine.fetchAction()).getDirection());
+        }
+        assertTrue(inputEngine.fetchAction() instanceof Exit);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testSharedActions() {
+        final var left = StreamInputEngine.char2Action(1, 'H');
+        assertTrue(left instanceof Move.Left);
+        assertSame(left, StreamInputEngine.char2Action(1, 'h'));
+        assertNotSame(left, StreamInputEngine.char2Action(2, 'H'));
+        assertEquals(2, StreamInputEngine.char2Action(2, 'H').getInitiator());
+        assertSame(StreamInputEngine.char2Action(25, 'E'), StreamInputEngine.char2Action(25, 'e'));
+        assertEquals(26, StreamInputEngine.char2Action(26, 'U').getInitiator());
+
+        final var inputEngine = new StreamInputEngine(fixValueStream("1\nH\n"));
+        assertSame(left, inputEngine.fetchAction());
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testRunLength() {
+        final var inputStream = fixValueStream("1\nL12\nH\nU3\nK0\nJ1\nE9\n");
+
+        final var inputEngine = new StreamInputEngine(inputStream);
+
+        final var right = (Move) inputEngine.fetchAction();
+        assertTrue(right instanceof Move.Right);
+        assertEquals(12, right.getSteps());
+        assertEquals(1, ((Move) inputEngine.fetchAction()).getSteps());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(inputEngine.fetchAction() instanceof Undo);
+        }
+        final var down = (Move) inputEngine.fetchAction();
+        assertTrue(down instanceof Move.Down);
+        assertEquals(1, down.getSteps());
+        assertTrue(inputEngine.fetchAction() instanceof Exit);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchActionsStopsAtExit() {
+        final var inputEngine = new StreamInputEngine(fixValueStream("0\nL\nH\nU\nE\nK\n"));
+        final var buffer = new Action[8];
+
+        assertEquals(2, inputEngine.fetchActions(buffer, 2));
+        assertTrue(buffer[0] instanceof Move.Right);
+        assertTrue(buffer[1] instanceof Move.Left);
+        assertEquals(2, inputEngine.fetchActions(buffer, buffer.length));
+        assertTrue(buffer[0] instanceof Undo);
+        assertTrue(buffer[1] instanceof Exit);
+    }
+
+    @Tag(TestKind.REGRESSION)
+    @Test
+    void testFetchActionsDoesNotWait() {
+        final var bytes = "0\nL\nH2\nK".getBytes(StandardCharsets.UTF_8);
+        // a stream which has nothing more to read after its first block, as a terminal waiting for input
+        final var stream = new InputStream() {
+            private boolean read = false;
+
+            @Override
+            public int read() {
+                throw new AssertionError("waited for input");
+            }
+
+            @Override
+            public int read(byte @NotNull [] b, int off, int len) {
+                if (read)
+                    throw new AssertionError("waited for input");
+                read = true;
+                System.arraycopy(bytes, 0, b, off, bytes.length);
+                return bytes.length;
+            }
+        };
+        final var inputEngine = new StreamInputEngine(stream);
+        final var buffer = new Action[8];
+
+        assertEquals(2, inputEngine.fetchActions(buffer, buffer.length));
+        assertInstanceOf(Move.Right.class, buffer[0]);
+        assertEquals(2, ((Move) buffer[1]).getSteps());
+        // the last line may still be followed by a number
+        assertEquals(0, inputEngine.fetchActions(buffer, buffer.length));
+    }
+
     private InputStream fixValueStream(String content) {
         final var bytes = content.getBytes(StandardCharsets.UTF_8);
         return new ByteArrayInputStream(bytes);